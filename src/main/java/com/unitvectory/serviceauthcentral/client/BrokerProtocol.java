@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * The BrokerProtocol class provides the binary protocol spoken between the
+ * SACTokenBroker and the BrokerSACClient.
+ * 
+ * A request is the version, the audience and the scopes. A response is a status
+ * byte followed by either the token or the error. Lengths and counts read from
+ * the socket are bounded and a message exceeding them is rejected.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@UtilityClass
+class BrokerProtocol {
+
+    static final byte VERSION = 1;
+
+    static final byte STATUS_OK = 0;
+
+    static final byte STATUS_CLIENT_ERROR = 1;
+
+    static final byte STATUS_ERROR = 2;
+
+    /**
+     * The maximum length of a string in bytes, well above any token.
+     */
+    static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    /**
+     * The maximum number of scopes or error messages.
+     */
+    static final int MAX_COUNT = 1024;
+
+    static void writeRequest(DataOutputStream out, TokenRequest request) throws IOException {
+        out.writeByte(VERSION);
+        writeString(out, request.getAudience());
+        List<String> scopes = request.getScopes() == null ? List.of() : new ArrayList<>(request.getScopes());
+        out.writeInt(scopes.size());
+        for (String scope : scopes) {
+            writeString(out, scope);
+        }
+        out.flush();
+    }
+
+    static TokenRequest readRequest(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported broker protocol version " + version);
+        }
+
+        TokenRequest.TokenRequestBuilder builder = TokenRequest.builder().audience(readString(in));
+        int scopeCount = readCount(in);
+        for (int i = 0; i < scopeCount; i++) {
+            builder.scope(readString(in));
+        }
+        return builder.build();
+    }
+
+    static void writeResponse(DataOutputStream out, TokenResponse response) throws IOException {
+        out.writeByte(STATUS_OK);
+        writeString(out, response.getAccessToken());
+        writeString(out, response.getTokenType());
+        out.writeLong(response.getExpiresIn());
+        out.writeLong(response.getCreated().toEpochMilli());
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, SACException exception) throws IOException {
+        if (exception instanceof SACClientException) {
+            SACClientException clientException = (SACClientException) exception;
+            out.writeByte(STATUS_CLIENT_ERROR);
+            writeString(out, clientException.getError());
+            List<String> messages = clientException.getMessages() == null ? List.of() : clientException.getMessages();
+            out.writeInt(messages.size());
+            for (String message : messages) {
+                writeString(out, message);
+            }
+            out.writeInt(clientException.getStatus());
+        } else {
+            out.writeByte(STATUS_ERROR);
+            writeString(out, exception.getMessage());
+        }
+        out.flush();
+    }
+
+    /**
+     * Read the response, throwing the error returned by the broker.
+     * 
+     * @param in the input stream
+     * @return the token response
+     * @throws IOException if the response cannot be read
+     */
+    static TokenResponse readResponse(DataInputStream in) throws IOException {
+        byte status = in.readByte();
+        switch (status) {
+            case STATUS_OK:
+                return TokenResponse.builder()
+                        .accessToken(readString(in))
+                        .tokenType(readString(in))
+                        .expiresIn(in.readLong())
+                        .created(Instant.ofEpochMilli(in.readLong()))
+                        .build();
+            case STATUS_CLIENT_ERROR:
+                String error = readString(in);
+                int messageCount = readCount(in);
+                List<String> messages = new ArrayList<>(messageCount);
+                for (int i = 0; i < messageCount; i++) {
+                    messages.add(readString(in));
+                }
+                throw new SACClientException(error, messages, in.readInt());
+            case STATUS_ERROR:
+                throw new SACException(readString(in));
+            default:
+                throw new IOException("Unexpected broker response status " + status);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid broker protocol count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        // The length is checked before allocating so a bad peer cannot exhaust memory
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        } else if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid broker protocol string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
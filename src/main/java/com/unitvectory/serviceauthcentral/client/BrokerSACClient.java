@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The BrokerSACClient class is a SACClient that gets tokens from a
+ * SACTokenBroker running on the same host.
+ * 
+ * No credentials are needed, the broker authenticates to ServiceAuthCentral on
+ * behalf of the caller. A request that the broker does not answer within the
+ * timeout fails with a SACTimeoutException.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class BrokerSACClient implements SACClient {
+
+    /**
+     * The default time to wait for the broker to respond.
+     */
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The address of the broker socket.
+     */
+    private final UnixDomainSocketAddress address;
+
+    /**
+     * The time to wait for the broker to respond.
+     */
+    private final Duration timeout;
+
+    /**
+     * Create a new broker client.
+     * 
+     * @param socketPath the path to the broker socket file
+     * @param timeout    the maximum time to wait for the broker to respond;
+     *                   defaults to 30 seconds
+     */
+    @Builder
+    private BrokerSACClient(@NonNull Path socketPath, Duration timeout) {
+        this.address = UnixDomainSocketAddress.of(socketPath);
+        this.timeout = timeout == null ? DEFAULT_TIMEOUT : timeout;
+
+        if (this.timeout.isNegative() || this.timeout.isZero()) {
+            throw new SACException("timeout must be positive");
+        }
+    }
+
+    @Override
+    public TokenResponse getToken(@NonNull TokenRequest request) {
+        return this.getToken(request, this.timeout);
+    }
+
+    @Override
+    public TokenResponse getToken(@NonNull TokenRequest request, @NonNull Duration timeout) {
+        Duration wait = timeout.compareTo(this.timeout) < 0 ? timeout : this.timeout;
+
+        // Connecting to a local socket is cheap, so a connection is used per request
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            // Socket channels do not support a read timeout, so the channel is closed
+            // once the time passes to unblock the read
+            AtomicBoolean timedOut = new AtomicBoolean();
+            CompletableFuture<Void> timer = CompletableFuture.runAsync(() -> {
+                timedOut.set(true);
+                closeQuietly(channel);
+            }, CompletableFuture.delayedExecutor(wait.toNanos(), TimeUnit.NANOSECONDS));
+
+            try {
+                channel.connect(this.address);
+
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)));
+                BrokerProtocol.writeRequest(out, request);
+
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                return BrokerProtocol.readResponse(in);
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new SACTimeoutException("Timed out waiting for broker", e);
+                }
+                throw e;
+            } finally {
+                timer.cancel(false);
+            }
+        } catch (IOException e) {
+            throw new SACException("Failed to get token from broker", e);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closing only to unblock the read
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The CacheStats class is a point in time snapshot of the statistics of a
+ * cache, suitable for exporting as metrics.
+ * 
+ * The counts are cumulative since the cache was created.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Value
+@Builder
+public class CacheStats {
+
+    /**
+     * The number of requests served from the cache
+     */
+    long hits;
+
+    /**
+     * The number of requests that had to be fetched
+     */
+    long misses;
+
+    /**
+     * The number of requests served a cached value that was due for refresh,
+     * either while it was refreshed in the background or because the refresh
+     * failed
+     */
+    long staleHits;
+
+    /**
+     * The number of refreshes run in the background
+     */
+    long backgroundRefreshes;
+
+    /**
+     * The number of fetches that failed
+     */
+    long refreshFailures;
+
+    /**
+     * The number of cached values removed because they could no longer be used or
+     * the cache was cleared
+     */
+    long evictions;
+
+    /**
+     * The number of values currently cached
+     */
+    long entries;
+
+    /**
+     * A rough estimate of the memory used by the cached values in bytes
+     */
+    long estimatedSize;
+}
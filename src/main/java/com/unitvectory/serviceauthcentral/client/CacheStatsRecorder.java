@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CacheStatsRecorder class records the statistics of a cache using striped
+ * counters so recording does not contend between threads.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class CacheStatsRecorder {
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder staleHits = new LongAdder();
+
+    private final LongAdder backgroundRefreshes = new LongAdder();
+
+    private final LongAdder refreshFailures = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    void recordHit() {
+        this.hits.increment();
+    }
+
+    void recordMiss() {
+        this.misses.increment();
+    }
+
+    void recordStaleHit() {
+        this.staleHits.increment();
+    }
+
+    void recordBackgroundRefresh() {
+        this.backgroundRefreshes.increment();
+    }
+
+    void recordRefreshFailure() {
+        this.refreshFailures.increment();
+    }
+
+    void recordEvictions(long count) {
+        this.evictions.add(count);
+    }
+
+    /**
+     * Create a snapshot of the statistics.
+     * 
+     * @param entries       the number of values currently cached
+     * @param estimatedSize the estimated memory used by the cached values
+     * @return the snapshot
+     */
+    CacheStats snapshot(long entries, long estimatedSize) {
+        return CacheStats.builder()
+                .hits(this.hits.sum())
+                .misses(this.misses.sum())
+                .staleHits(this.staleHits.sum())
+                .backgroundRefreshes(this.backgroundRefreshes.sum())
+                .refreshFailures(this.refreshFailures.sum())
+                .evictions(this.evictions.sum())
+                .entries(entries)
+                .estimatedSize(estimatedSize)
+                .build();
+    }
+}
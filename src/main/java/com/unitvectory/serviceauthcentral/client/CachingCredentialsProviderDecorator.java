@@ -13,6 +13,12 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
 import lombok.Builder;
 import lombok.NonNull;
 
@@ -24,6 +30,11 @@ import lombok.NonNull;
  */
 public class CachingCredentialsProviderDecorator implements CredentialsProvider {
 
+    /**
+     * The estimated fixed memory of the cached credentials in bytes.
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
     /**
      * The credentials provider we are decorating with caching.
      */
@@ -34,34 +45,230 @@ public class CachingCredentialsProviderDecorator implements CredentialsProvider
      */
     private SACCredentials cachedCredentials;
 
+    /**
+     * The asynchronous fetch in progress, shared by concurrent callers; null if
+     * none.
+     */
+    private CompletableFuture<SACCredentials> pending;
+
+    /**
+     * The policy deciding how long the credentials can be used.
+     */
+    private final TokenRefreshPolicy refreshPolicy;
+
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatsRecorder stats = new CacheStatsRecorder();
+
     /**
      * Create a new caching credentials decorator.
      * 
-     * @param provider the credentials provider to decorate.
+     * @param provider      the credentials provider to decorate.
+     * @param refreshPolicy the policy whose minimum remaining lifetime decides
+     *                      when credentials are replaced; defaults to
+     *                      TokenRefreshPolicy.DEFAULT
      */
     @Builder
-    private CachingCredentialsProviderDecorator(@NonNull CredentialsProvider provider) {
+    private CachingCredentialsProviderDecorator(@NonNull CredentialsProvider provider,
+            TokenRefreshPolicy refreshPolicy) {
         this.provider = provider;
         this.cachedCredentials = null;
+        if (refreshPolicy == null) {
+            this.refreshPolicy = TokenRefreshPolicy.DEFAULT;
+        } else {
+            this.refreshPolicy = refreshPolicy;
+        }
     }
 
     @Override
     public SACCredentials getCredentials() {
+        CompletableFuture<SACCredentials> inProgress;
+
         // Synchronize to prevent multiple threads from getting the credentials
+        CacheLockEvent lockEvent = JfrEvents.AVAILABLE ? new CacheLockEvent() : null;
+        if (lockEvent != null) {
+            lockEvent.begin();
+        }
         synchronized (this) {
+            if (lockEvent != null && lockEvent.shouldCommit()) {
+                lockEvent.cache = "credentials";
+                lockEvent.commit();
+            }
 
             // Clear the expired credentials
-            if (this.cachedCredentials != null && this.cachedCredentials.isExpired(30)) {
+            if (this.cachedCredentials != null && !this.refreshPolicy.isUsable(this.cachedCredentials)) {
                 this.cachedCredentials = null;
+                this.stats.recordEvictions(1);
             }
 
-            // Get the credentials if they are not cached
-            if (this.cachedCredentials == null) {
-                this.cachedCredentials = this.provider.getCredentials();
+            if (this.cachedCredentials != null) {
+                this.stats.recordHit();
+                return this.cachedCredentials;
+            }
+
+            // Get the credentials if they are not cached or being fetched
+            if (this.pending == null) {
+                this.stats.recordMiss();
+                try {
+                    this.cachedCredentials = this.provider.getCredentials();
+                } catch (RuntimeException e) {
+                    this.stats.recordRefreshFailure();
+                    throw e;
+                }
+
+                return this.cachedCredentials;
             }
 
-            return this.cachedCredentials;
+            // Wait for the asynchronous fetch in progress rather than fetching again
+            this.stats.recordHit();
+            inProgress = this.pending;
         }
+
+        try {
+            return inProgress.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SACException("Failed to get credentials", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted getting credentials", e);
+        }
+    }
+
+    /**
+     * Get the credentials without blocking while they are fetched. Concurrent
+     * callers share a single fetch from the decorated provider.
+     * 
+     * @return the future completed with the credentials
+     */
+    @Override
+    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+        CompletableFuture<SACCredentials> result;
+        synchronized (this) {
+            // Clear the expired credentials
+            if (this.cachedCredentials != null && !this.refreshPolicy.isUsable(this.cachedCredentials)) {
+                this.cachedCredentials = null;
+                this.stats.recordEvictions(1);
+            }
+
+            if (this.cachedCredentials != null) {
+                this.stats.recordHit();
+                return CompletableFuture.completedFuture(this.cachedCredentials);
+            }
+
+            if (this.pending != null) {
+                // Served by the fetch in progress, as when waiting for the lock; a copy so
+                // a caller cancelling its future does not affect the others
+                this.stats.recordHit();
+                return this.pending.copy();
+            }
+
+            this.stats.recordMiss();
+            result = new CompletableFuture<>();
+            this.pending = result;
+        }
+
+        CompletableFuture<SACCredentials> fetch;
+        try {
+            fetch = this.provider.getCredentialsAsync();
+        } catch (RuntimeException e) {
+            fetch = CompletableFuture.failedFuture(e);
+        }
+
+        fetch.whenComplete((credentials, error) -> {
+            synchronized (this) {
+                // Only cached if the cache was not cleared during the fetch
+                if (this.pending == result) {
+                    this.pending = null;
+                    if (error == null) {
+                        this.cachedCredentials = credentials;
+                    }
+                }
+                if (error != null) {
+                    this.stats.recordRefreshFailure();
+                }
+            }
+
+            if (error == null) {
+                result.complete(credentials);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+
+        return result.copy();
+    }
+
+    @Override
+    public void warmUp() {
+        this.provider.warmUp();
+    }
+
+    /**
+     * Clear the cached credentials.
+     * 
+     * An asynchronous fetch in progress completes for its callers but is not
+     * cached, so later callers fetch new credentials.
+     */
+    public synchronized void clearCache() {
+        this.pending = null;
+        if (this.cachedCredentials != null) {
+            this.cachedCredentials = null;
+            this.stats.recordEvictions(1);
+        }
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * 
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        SACCredentials credentials;
+        synchronized (this) {
+            credentials = this.cachedCredentials;
+        }
+
+        return this.stats.snapshot(credentials == null ? 0 : 1, estimateSize(credentials));
+    }
+
+    /**
+     * Get the remaining lifetime of the cached credentials.
+     * 
+     * @return the time until the credentials expire, zero if they have expired;
+     *         null if no credentials are cached or they do not expire
+     */
+    public synchronized Duration getRemainingLifetime() {
+        if (!(this.cachedCredentials instanceof JwtAssertionCredentials)) {
+            return null;
+        }
+
+        Instant expiration = ((JwtAssertionCredentials) this.cachedCredentials).getExpiration();
+        Duration remaining = Duration.between(Instant.now(), expiration);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private static long estimateSize(SACCredentials credentials) {
+        if (credentials instanceof JwtAssertionCredentials) {
+            JwtAssertionCredentials jwt = (JwtAssertionCredentials) credentials;
+            return ENTRY_OVERHEAD + 2L * (length(jwt.getClientId()) + length(jwt.getJwtAssertion()));
+        } else if (credentials instanceof ClientCredentials) {
+            ClientCredentials client = (ClientCredentials) credentials;
+            return ENTRY_OVERHEAD + 2L * (length(client.getClientId()) + length(client.getClientSecret()));
+        }
+
+        return 0;
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : value.length();
     }
 
 }
@@ -13,24 +13,55 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import lombok.Builder;
+import lombok.NonNull;
 
 /**
  * The CachingSACClientDecorator class provides a way to cache the results of a
  * SACClient.
  * 
- * This uses an in memory map to cache the tokens in memory. This cache is not
- * shared and is not cleared.
+ * By default this uses an in memory store to cache the tokens in memory. A
+ * different TokenStore, such as the FileTokenStore, can be provided to share
+ * tokens between processes.
  * 
- * The
+ * When the refresh policy says a cached token should be refreshed it is
+ * refreshed by the caller, falling back to the cached token if the refresh
+ * fails. If a refresh executor is provided the cached token is instead served
+ * while it is refreshed in the background.
+ * 
+ * With an adaptive refresh policy the latency of the tokens fetched from the
+ * decorated client is recorded, and tokens are refreshed once their remaining
+ * lifetime is close to what a slow fetch needs.
  * 
  * @author Jared Hatfield (UnitVectorY Labs)
  */
 public class CachingSACClientDecorator implements SACClient {
 
+    /**
+     * The estimated fixed memory per cached token in bytes.
+     */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    /**
+     * The estimated fixed memory per additional string in bytes.
+     */
+    private static final long ENTRY_OVERHEAD_PER_STRING = 48;
+
     /**
      * The SACClient we are decorating with caching.
      */
@@ -39,65 +70,520 @@ public class CachingSACClientDecorator implements SACClient {
     /**
      * The cached tokens.
      */
-    private Map<TokenRequest, TokenResponse> tokenCache = new HashMap<>();
+    private final TokenStore tokenStore;
+
+    /**
+     * The policy deciding when cached tokens are refreshed.
+     */
+    private final TokenRefreshPolicy refreshPolicy;
+
+    /**
+     * The executor for background refreshes; null to refresh on the caller.
+     */
+    private final Executor refreshExecutor;
+
+    /**
+     * The requests with a background refresh in progress.
+     */
+    private final Set<TokenRequest> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The token requests to prefetch when warming up.
+     */
+    private final Set<TokenRequest> prefetch;
+
+    /**
+     * The number of tokens fetched at the same time when warming up.
+     */
+    private final int prefetchParallelism;
+
+    /**
+     * True once the client has been warmed up.
+     */
+    private volatile boolean warm;
+
+    /**
+     * The requests whose tokens were cached by this decorator, used to report
+     * the cached entries as the TokenStore cannot be enumerated.
+     */
+    private final Set<TokenRequest> cachedRequests = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Incremented each time the cache is cleared so a token fetched before the
+     * cache was cleared is not stored after it; guarded by this.
+     */
+    private volatile long generation;
+
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatsRecorder stats = new CacheStatsRecorder();
+
+    /**
+     * The recent fetch latencies; null unless the refresh policy is adaptive.
+     */
+    private final LatencyRecorder fetchLatencies;
+
+    /**
+     * The p99 of the recent fetch latencies in nanoseconds, updated after each
+     * fetch so it is not calculated for every request; -1 until a fetch
+     * completes.
+     */
+    private volatile long fetchLatencyP99 = -1;
 
     /**
      * Create a new caching SAC client decorator.
      * 
-     * @param client the SAC client to decorate.
+     * @param client              the SAC client to decorate.
+     * @param tokenStore          the store for the cached tokens; defaults to an
+     *                            InMemoryTokenStore
+     * @param refreshPolicy       the policy deciding when tokens are refreshed;
+     *                            defaults to TokenRefreshPolicy.DEFAULT
+     * @param refreshExecutor     the executor to refresh tokens in the background;
+     *                            defaults to refreshing on the caller
+     * @param prefetch            the token requests to fetch when warming up
+     * @param prefetchParallelism the number of tokens fetched at the same time
+     *                            when warming up; defaults to 4
      */
     @Builder
-    private CachingSACClientDecorator(SACClient client) {
+    private CachingSACClientDecorator(SACClient client, TokenStore tokenStore, TokenRefreshPolicy refreshPolicy,
+            Executor refreshExecutor, Set<TokenRequest> prefetch, Integer prefetchParallelism) {
         this.client = client;
+        if (tokenStore == null) {
+            this.tokenStore = new InMemoryTokenStore();
+        } else {
+            this.tokenStore = tokenStore;
+        }
+
+        if (refreshPolicy == null) {
+            this.refreshPolicy = TokenRefreshPolicy.DEFAULT;
+        } else {
+            this.refreshPolicy = refreshPolicy;
+        }
+
+        this.fetchLatencies = this.refreshPolicy.isAdaptive()
+                ? new LatencyRecorder(this.refreshPolicy.getLatencySampleSize())
+                : null;
+
+        this.refreshExecutor = refreshExecutor;
+
+        if (prefetch == null) {
+            this.prefetch = Set.of();
+        } else {
+            this.prefetch = Set.copyOf(prefetch);
+        }
+
+        if (prefetchParallelism == null) {
+            this.prefetchParallelism = 4;
+        } else {
+            this.prefetchParallelism = Math.max(1, prefetchParallelism);
+        }
     }
 
     /**
      * Clear the cache of tokens.
+     * 
+     * Tokens being fetched while the cache is cleared are returned to their
+     * callers but not cached, so later callers fetch a new token.
+     * 
+     * The TokenStore is cleared, so when it is shared, such as a FileTokenStore,
+     * the tokens are also cleared for the other processes sharing it.
+     */
+    public synchronized void clearCache() {
+        this.generation++;
+        long evicted = this.cachedRequests.stream().filter(request -> this.tokenStore.get(request) != null).count();
+        this.cachedRequests.clear();
+        this.tokenStore.clear();
+        this.stats.recordEvictions(evicted);
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * 
+     * The entries and estimated size only include the tokens cached through this
+     * decorator, not tokens another process added to a shared TokenStore.
+     * 
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        long entries = 0;
+        long estimatedSize = 0;
+        for (TokenRequest request : this.cachedRequests) {
+            TokenResponse response = this.tokenStore.get(request);
+            if (response != null) {
+                entries++;
+                estimatedSize += estimateSize(request, response);
+            }
+        }
+
+        return this.stats.snapshot(entries, estimatedSize);
+    }
+
+    /**
+     * Get the remaining lifetime of the cached token for the request.
+     * 
+     * @param request the token request
+     * @return the time until the token expires, zero if it has expired; null if
+     *         no token is cached
+     */
+    public Duration getRemainingLifetime(TokenRequest request) {
+        TokenResponse cachedResponse = this.tokenStore.get(request);
+        if (cachedResponse == null) {
+            return null;
+        }
+
+        return remainingLifetime(cachedResponse, Instant.now());
+    }
+
+    /**
+     * Get the remaining lifetime of each token cached through this decorator.
+     * 
+     * @return the time until each token expires, zero if it has expired
+     */
+    public Map<TokenRequest, Duration> getRemainingLifetimes() {
+        Instant now = Instant.now();
+        Map<TokenRequest, Duration> lifetimes = new HashMap<>();
+        for (TokenRequest request : this.cachedRequests) {
+            TokenResponse response = this.tokenStore.get(request);
+            if (response != null) {
+                lifetimes.put(request, remainingLifetime(response, now));
+            }
+        }
+
+        return lifetimes;
+    }
+
+    /**
+     * Warm up the decorated client and then fetch the tokens for the prefetch
+     * requests into the cache.
+     * 
+     * @throws SACException if warming up the client or fetching a token failed
+     */
+    @Override
+    public void warmUp() {
+        this.client.warmUp();
+
+        if (!this.prefetch.isEmpty()) {
+            ExecutorService executor = Executors
+                    .newFixedThreadPool(Math.min(this.prefetchParallelism, this.prefetch.size()));
+            try {
+                List<Future<TokenResponse>> futures = new ArrayList<>(this.prefetch.size());
+                for (TokenRequest request : this.prefetch) {
+                    futures.add(executor.submit(() -> this.getToken(request)));
+                }
+
+                for (Future<TokenResponse> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SACException) {
+                    throw (SACException) e.getCause();
+                }
+                throw new SACException("Failed to prefetch token", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted prefetching tokens", e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        this.warm = true;
+    }
+
+    /**
+     * Checks if the client has been warmed up.
+     * 
+     * @return true once warmUp has completed successfully
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+
+    /**
+     * Get the time the cached token for the request is scheduled to be refreshed.
+     * 
+     * The refresh time includes the jitter from the refresh policy and can be
+     * exported to observe how refreshes are spread across instances.
+     * 
+     * @param request the token request
+     * @return the refresh time; null if no token is cached
      */
-    public void clearCache() {
-        this.tokenCache.clear();
+    public Instant getRefreshTime(TokenRequest request) {
+        TokenResponse cachedResponse = this.tokenStore.get(request);
+        if (cachedResponse == null) {
+            return null;
+        }
+
+        return this.refreshPolicy.refreshTime(cachedResponse, this.fetchLatencyP99);
     }
 
     @Override
     public TokenResponse getToken(TokenRequest request) {
+        return this.getToken(request, Deadline.NONE);
+    }
+
+    /**
+     * Get a token, giving up once the timeout passes. A cached token is returned
+     * without waiting, otherwise the remaining time is passed to the client.
+     * 
+     * @param request the token request
+     * @param timeout the maximum time to wait for the token
+     * @return the token response
+     * @throws SACTimeoutException if the timeout passed before a token was
+     *                             retrieved
+     */
+    @Override
+    public TokenResponse getToken(TokenRequest request, @NonNull Duration timeout) {
+        return this.getToken(request, Deadline.after(timeout));
+    }
+
+    private TokenResponse getToken(TokenRequest request, Deadline deadline) {
 
-        synchronized (this) {
-            TokenResponse cachedResponse = this.tokenCache.get(request);
+        TokenResponse cachedResponse = this.tokenStore.get(request);
+        if (cachedResponse != null) {
+            // Token is cached, we need to decide how to handle it.
+            Instant now = Instant.now();
+            long latency = this.fetchLatencyP99;
+            if (!this.refreshPolicy.needsRefresh(cachedResponse, now, latency)
+                    && this.refreshPolicy.isUsable(cachedResponse, now)) {
+                // Token is valid and not yet due for refresh, use it.
+                this.recordCacheResult(request, TokenCacheEvent.HIT);
+                return cachedResponse;
+            }
+
+            if (this.refreshExecutor != null && this.refreshPolicy.canServeStale(cachedResponse, now, latency)) {
+                // Serve the cached token while it is refreshed in the background.
+                this.scheduleRefresh(request);
+                this.recordCacheResult(request, TokenCacheEvent.STALE);
+                return cachedResponse;
+            }
+        }
+
+        return this.refreshToken(request, false, deadline);
+    }
+
+    /**
+     * Refresh the token for the request unless another caller already did.
+     * 
+     * @param request    the token request
+     * @param background true if refreshing in the background
+     * @param deadline   the deadline for the refresh
+     * @return the token response
+     */
+    private TokenResponse refreshToken(TokenRequest request, boolean background, Deadline deadline) {
+
+        // Only one caller refreshes the token at a time
+        CacheLockEvent lockEvent = JfrEvents.AVAILABLE ? new CacheLockEvent() : null;
+        if (lockEvent != null) {
+            lockEvent.begin();
+        }
+        try (TokenStore.RefreshLock lock = deadline.isBounded()
+                ? this.tokenStore.lock(request, deadline.remaining(Duration.ofNanos(Long.MAX_VALUE)))
+                : this.tokenStore.lock(request)) {
+            if (lockEvent != null && lockEvent.shouldCommit()) {
+                lockEvent.cache = "token";
+                lockEvent.audience = request.getAudience();
+                lockEvent.commit();
+            }
 
-            if (cachedResponse != null) {
-                // Token is cached, we need to decide how to handle it.
+            // Read before the cached token so a clear from here on is detected on store
+            long generation = this.generation;
 
-                int halflife = (int) cachedResponse.getExpiresIn() / 2;
-                if (!cachedResponse.isExpired(halflife)) {
-                    // Token is valid and not halfway expired, use it.
-                    return cachedResponse;
+            // Another caller may have refreshed the token while waiting for the lock
+            TokenResponse cachedResponse = this.tokenStore.get(request);
+            Instant now = Instant.now();
+            if (cachedResponse != null && !this.refreshPolicy.needsRefresh(cachedResponse, now, this.fetchLatencyP99)
+                    && this.refreshPolicy.isUsable(cachedResponse, now)) {
+                if (!background) {
+                    this.recordCacheResult(request, TokenCacheEvent.HIT);
                 }
+                return cachedResponse;
+            }
 
-                // Token is in the latter half of its life.
-                try {
-                    // Try to request a new token
-                    TokenResponse newResponse = this.client.getToken(request);
+            if (cachedResponse != null && !this.refreshPolicy.isUsable(cachedResponse, now)) {
+                // The cached token can no longer be used and will be replaced
+                this.stats.recordEvictions(1);
+            }
 
-                    // Successfully retrieved a new token, cache and return it.
-                    this.tokenCache.put(request, newResponse);
-                    return newResponse;
+            TokenRefreshEvent refreshEvent = JfrEvents.AVAILABLE ? new TokenRefreshEvent() : null;
+            if (refreshEvent != null) {
+                refreshEvent.begin();
+            }
+            boolean success = false;
+            try {
+                if (cachedResponse != null) {
+                    // Token is due for refresh.
+                    try {
+                        // Try to request a new token
+                        TokenResponse newResponse = this.fetchToken(request, deadline);
 
-                } catch (Exception e) {
-                    // If token request fails, fall back to the non-expired cached token.
-                    if (!cachedResponse.isExpired(30)) {
-                        return cachedResponse;
+                        // Successfully retrieved a new token, cache and return it.
+                        this.store(request, newResponse, generation);
+                        success = true;
+                        if (!background) {
+                            this.recordCacheResult(request, TokenCacheEvent.MISS);
+                        }
+                        return newResponse;
+
+                    } catch (Exception e) {
+                        // If token request fails, fall back to the cached token if allowed.
+                        if (this.refreshPolicy.canServeStale(cachedResponse, Instant.now(), this.fetchLatencyP99)) {
+                            if (!background) {
+                                this.recordCacheResult(request, TokenCacheEvent.STALE);
+                            }
+                            return cachedResponse;
+                        }
+                        // If it can no longer be used, we will request a new token below.
                     }
-                    // If it is fully expired, we will request a new token outside this block.
+                }
+
+                // Either no cached token or the cached token is expired.
+                TokenResponse response = this.fetchToken(request, deadline);
+
+                // Cache and return the new token.
+                this.store(request, response, generation);
+                success = true;
+                if (!background) {
+                    this.recordCacheResult(request, TokenCacheEvent.MISS);
+                }
+
+                return response;
+            } finally {
+                if (refreshEvent != null && refreshEvent.shouldCommit()) {
+                    refreshEvent.success = success;
+                    refreshEvent.audience = request.getAudience();
+                    refreshEvent.background = background;
+                    refreshEvent.commit();
                 }
             }
+        }
+    }
 
-            // Either no cached token or the cached token is expired.
-            TokenResponse response = this.client.getToken(request);
+    /**
+     * Get a token from the client within the remaining time budget.
+     * 
+     * @param request  the token request
+     * @param deadline the deadline
+     * @return the token response
+     */
+    private TokenResponse fetchToken(TokenRequest request, Deadline deadline) {
+        try {
+            TokenResponse response;
+            long start = System.nanoTime();
+            if (!deadline.isBounded()) {
+                response = this.client.getToken(request);
+            } else {
+                // Time spent waiting for the lock counts against the budget
+                deadline.check();
+                response = this.client.getToken(request, Duration.ofNanos(deadline.remainingNanos(Long.MAX_VALUE)));
+            }
 
-            // Cache and return the new token.
-            this.tokenCache.put(request, response);
+            if (this.fetchLatencies != null) {
+                this.fetchLatencies.record(System.nanoTime() - start);
+                this.fetchLatencyP99 = this.fetchLatencies.percentile(0.99);
+            }
 
             return response;
+        } catch (RuntimeException e) {
+            this.stats.recordRefreshFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Cache the token unless the cache was cleared since it was requested.
+     * 
+     * @param request    the token request
+     * @param response   the token response
+     * @param generation the generation read before the token was requested
+     */
+    private synchronized void store(TokenRequest request, TokenResponse response, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        this.tokenStore.put(request, response);
+        this.cachedRequests.add(request);
+    }
+
+    /**
+     * Refresh the token for the request in the background unless a refresh is
+     * already in progress.
+     * 
+     * @param request the token request
+     */
+    private void scheduleRefresh(TokenRequest request) {
+        if (!this.refreshing.add(request)) {
+            return;
+        }
+
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    this.stats.recordBackgroundRefresh();
+                    this.refreshToken(request, true, Deadline.NONE);
+                } catch (RuntimeException e) {
+                    // The cached token continues to be served until it can no longer be used
+                } finally {
+                    this.refreshing.remove(request);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.remove(request);
+        }
+    }
+
+    private void recordCacheResult(TokenRequest request, String result) {
+        switch (result) {
+            case TokenCacheEvent.HIT:
+                this.stats.recordHit();
+                break;
+            case TokenCacheEvent.STALE:
+                this.stats.recordStaleHit();
+                break;
+            default:
+                this.stats.recordMiss();
+        }
+
+        if (!JfrEvents.AVAILABLE) {
+            return;
+        }
+
+        TokenCacheEvent event = new TokenCacheEvent();
+        if (event.shouldCommit()) {
+            event.audience = request.getAudience();
+            event.result = result;
+            event.commit();
+        }
+    }
+
+    private static Duration remainingLifetime(TokenResponse response, Instant now) {
+        Duration remaining = Duration.between(now, response.getCreated().plusSeconds(response.getExpiresIn()));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Estimate the memory used by a cached token; the object headers and fields
+     * plus two bytes per character of the strings.
+     * 
+     * @param request  the token request
+     * @param response the cached token
+     * @return the estimated size in bytes
+     */
+    private static long estimateSize(TokenRequest request, TokenResponse response) {
+        long chars = length(request.getAudience()) + length(response.getAccessToken())
+                + length(response.getTokenType());
+        if (request.getScopes() != null) {
+            for (String scope : request.getScopes()) {
+                chars += length(scope) + ENTRY_OVERHEAD_PER_STRING;
+            }
         }
+
+        return ENTRY_OVERHEAD + 2 * chars;
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : value.length();
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The CredentialsMintEvent class is the JFR event recorded each time a
+ * credentials provider creates new credentials.
+ * 
+ * Disabled by default, enable serviceauthcentral.CredentialsMint in the
+ * recording settings.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Name("serviceauthcentral.CredentialsMint")
+@Label("Credentials Mint")
+@Description("Creation of credentials for authenticating to ServiceAuthCentral")
+@Category("ServiceAuthCentral")
+@Enabled(false)
+@StackTrace(false)
+class CredentialsMintEvent extends Event {
+
+    @Label("Provider")
+    String provider;
+
+    @Label("Signing Duration")
+    @Description("Time spent signing the JWT, 0 if not signed locally")
+    @Timespan(Timespan.NANOSECONDS)
+    long signingDuration;
+}
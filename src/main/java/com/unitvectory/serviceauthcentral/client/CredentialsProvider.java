@@ -13,6 +13,8 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The CredentialsProvider interface provides a base interface for accessing
  * the credentials for authenticating to ServiceAuthCentral.
@@ -27,4 +29,32 @@ public interface CredentialsProvider {
      * @return The credentials.
      */
     SACCredentials getCredentials();
+
+    /**
+     * Get the credentials for authenticating to ServiceAuthCentral without
+     * blocking the caller while they are created.
+     * 
+     * The default implementation calls getCredentials on the calling thread and
+     * returns a completed future; providers that wait on I/O override this.
+     * 
+     * @return The future completed with the credentials, or exceptionally if they
+     *         could not be created.
+     */
+    default CompletableFuture<SACCredentials> getCredentialsAsync() {
+        try {
+            return CompletableFuture.completedFuture(this.getCredentials());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Complete any initialization the provider deferred, so the first call to
+     * get the credentials does not pay for it. The default implementation does
+     * nothing.
+     * 
+     * @throws SACException if the provider could not be initialized
+     */
+    default void warmUp() {
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+
+import lombok.NonNull;
+
+/**
+ * The Deadline class is the point in time by which a token request must
+ * complete, passed down from the caller so each step only uses the remaining
+ * time budget.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+final class Deadline {
+
+    /**
+     * The deadline for requests without one.
+     */
+    static final Deadline NONE = new Deadline(0, false);
+
+    /**
+     * The deadline as System.nanoTime.
+     */
+    private final long deadlineNanos;
+
+    /**
+     * True if there is a deadline.
+     */
+    private final boolean bounded;
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Create a deadline after the timeout from now.
+     * 
+     * @param timeout the timeout
+     * @return the deadline
+     */
+    static Deadline after(@NonNull Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Checks if there is a deadline.
+     * 
+     * @return true if there is a deadline
+     */
+    boolean isBounded() {
+        return this.bounded;
+    }
+
+    /**
+     * Checks if the deadline has passed.
+     * 
+     * @return true if there is a deadline and it has passed
+     */
+    boolean isExpired() {
+        return this.bounded && this.deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Get the remaining time, capped by the limit.
+     * 
+     * @param limitNanos the maximum to return in nanoseconds
+     * @return the remaining nanoseconds, zero once the deadline has passed
+     */
+    long remainingNanos(long limitNanos) {
+        if (!this.bounded) {
+            return limitNanos;
+        }
+
+        return Math.max(0, Math.min(limitNanos, this.deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Get the remaining time, capped by the limit.
+     * 
+     * @param limit the maximum to return
+     * @return the remaining time, zero once the deadline has passed
+     */
+    Duration remaining(@NonNull Duration limit) {
+        return Duration.ofNanos(this.remainingNanos(limit.toNanos()));
+    }
+
+    /**
+     * Throws if the deadline has passed.
+     * 
+     * @throws SACTimeoutException if the deadline has passed
+     */
+    void check() {
+        if (this.isExpired()) {
+            throw new SACTimeoutException("Timed out getting token");
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The FailoverCredentialsProvider class gets the credentials from the first of
+ * several providers that succeeds, tried in order of priority.
+ * 
+ * A provider that fails, or takes longer than the slow threshold, is skipped
+ * for the cool-down period so requests stay on a provider that is responding.
+ * Skipped providers are only tried as a last resort when the others fail, and
+ * are tried again in priority order once the cool-down passes. Latency is only
+ * compared against the slow threshold; providers are not reordered by how fast
+ * they are, so a healthy provider keeps its priority.
+ * 
+ * With an attempt timeout, every provider is called on the attempt executor so
+ * the caller can stop waiting for it, whether or not it blocks the calling
+ * thread. The default attempt executor is shut down when the provider is
+ * closed.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class FailoverCredentialsProvider implements CredentialsProvider, AutoCloseable {
+
+    /**
+     * The default time an unhealthy provider is skipped.
+     */
+    private static final Duration DEFAULT_COOLDOWN = Duration.ofSeconds(30);
+
+    /**
+     * The providers in order of priority.
+     */
+    private final List<ProviderHealth> providers;
+
+    /**
+     * The time an unhealthy provider is skipped in nanoseconds.
+     */
+    private final long cooldownNanos;
+
+    /**
+     * The latency above which a provider is treated as unhealthy in nanoseconds;
+     * 0 if disabled.
+     */
+    private final long slowThresholdNanos;
+
+    /**
+     * The time to wait for a provider before trying the next one; null to wait
+     * until it returns.
+     */
+    private final Duration attemptTimeout;
+
+    /**
+     * The executor calling the providers when there is an attempt timeout; null
+     * if there is no attempt timeout.
+     */
+    private final Executor attemptExecutor;
+
+    /**
+     * The default attempt executor, shut down on close; null if the executor was
+     * provided or there is no attempt timeout.
+     */
+    private final ExecutorService defaultExecutor;
+
+    /**
+     * Create a new failover credentials provider.
+     * 
+     * @param providers       the providers in order of priority
+     * @param cooldown        the time a provider that failed or was slow is
+     *                        skipped; defaults to 30 seconds
+     * @param slowThreshold   the latency above which a provider is skipped even
+     *                        though it succeeded; defaults to disabled
+     * @param attemptTimeout  the time to wait for a provider before trying the
+     *                        next one, using getCredentialsAsync; defaults to
+     *                        waiting until the provider returns
+     * @param attemptExecutor the executor calling the providers when there is an
+     *                        attempt timeout, which is not shut down on close;
+     *                        defaults to a cached pool of daemon threads
+     */
+    @Builder
+    private FailoverCredentialsProvider(@NonNull List<CredentialsProvider> providers, Duration cooldown,
+            Duration slowThreshold, Duration attemptTimeout, Executor attemptExecutor) {
+        if (providers.isEmpty()) {
+            throw new SACException("At least one credentials provider is required");
+        }
+
+        List<ProviderHealth> health = new ArrayList<>(providers.size());
+        for (CredentialsProvider provider : providers) {
+            health.add(new ProviderHealth(provider));
+        }
+
+        this.providers = List.copyOf(health);
+        this.cooldownNanos = (cooldown == null ? DEFAULT_COOLDOWN : cooldown).toNanos();
+        this.slowThresholdNanos = slowThreshold == null ? 0 : slowThreshold.toNanos();
+        this.attemptTimeout = attemptTimeout;
+
+        if (attemptTimeout == null) {
+            this.attemptExecutor = null;
+            this.defaultExecutor = null;
+        } else if (attemptExecutor != null) {
+            this.attemptExecutor = attemptExecutor;
+            this.defaultExecutor = null;
+        } else {
+            // Threads blocked on a provider that timed out must not hold up the
+            // application, so they are daemons and only kept while in use
+            this.defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "sac-credentials-failover");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.attemptExecutor = this.defaultExecutor;
+        }
+    }
+
+    @Override
+    public SACCredentials getCredentials() {
+        SACException failure = null;
+        for (ProviderHealth provider : this.select()) {
+            long start = System.nanoTime();
+            try {
+                SACCredentials credentials = this.attempt(provider);
+                this.recordSuccess(provider, System.nanoTime() - start);
+                return credentials;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted getting credentials", e);
+            } catch (Exception e) {
+                provider.recordFailure(this.cooldownNanos);
+                failure = toSACException(e);
+            }
+        }
+
+        throw failure;
+    }
+
+    @Override
+    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+        return this.attemptAsync(this.select(), 0, null);
+    }
+
+    /**
+     * Warm up each provider; a provider that fails to warm up is skipped for the
+     * cool-down period.
+     * 
+     * @throws SACException if no provider could be warmed up
+     */
+    @Override
+    public void warmUp() {
+        SACException failure = null;
+        boolean warmed = false;
+        for (ProviderHealth provider : this.providers) {
+            try {
+                provider.provider.warmUp();
+                warmed = true;
+            } catch (RuntimeException e) {
+                provider.recordFailure(this.cooldownNanos);
+                failure = toSACException(e);
+            }
+        }
+
+        if (!warmed) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stop the default attempt executor; an attempt executor that was provided is
+     * left running.
+     */
+    @Override
+    public void close() {
+        if (this.defaultExecutor != null) {
+            this.defaultExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the credentials from the provider, giving up after the attempt
+     * timeout.
+     */
+    private SACCredentials attempt(ProviderHealth provider) throws InterruptedException, ExecutionException {
+        if (this.attemptTimeout == null) {
+            return provider.provider.getCredentials();
+        }
+
+        return this.credentialsAsync(provider).get();
+    }
+
+    /**
+     * Get the credentials from the provider asynchronously, timing out after the
+     * attempt timeout.
+     * 
+     * A provider may block the calling thread even in getCredentialsAsync, such as
+     * the default implementation or a wrapper of a provider that blocks, so with
+     * an attempt timeout every provider is called on the attempt executor.
+     */
+    private CompletableFuture<SACCredentials> credentialsAsync(ProviderHealth provider) {
+        if (this.attemptTimeout == null) {
+            return provider.provider.getCredentialsAsync();
+        }
+
+        return CompletableFuture.supplyAsync(provider.provider::getCredentialsAsync, this.attemptExecutor)
+                .thenCompose(future -> future)
+                .orTimeout(this.attemptTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Try the providers starting at the index until one succeeds, completing
+     * with the last failure if none do.
+     */
+    private CompletableFuture<SACCredentials> attemptAsync(List<ProviderHealth> order, int index,
+            SACException failure) {
+        if (index >= order.size()) {
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        ProviderHealth provider = order.get(index);
+        long start = System.nanoTime();
+        CompletableFuture<SACCredentials> future;
+        try {
+            future = this.credentialsAsync(provider);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.handle((credentials, error) -> {
+            if (error == null) {
+                this.recordSuccess(provider, System.nanoTime() - start);
+                return CompletableFuture.completedFuture(credentials);
+            }
+
+            provider.recordFailure(this.cooldownNanos);
+            return this.attemptAsync(order, index + 1, toSACException(error));
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Get the providers in the order they should be tried.
+     * 
+     * @return the healthy providers in priority order followed by the unhealthy
+     *         providers as a last resort
+     */
+    private List<ProviderHealth> select() {
+        if (this.providers.size() == 1) {
+            // Nothing to choose between
+            return this.providers;
+        }
+
+        List<ProviderHealth> healthy = new ArrayList<>(this.providers.size());
+        List<ProviderHealth> unhealthy = new ArrayList<>();
+        long now = System.nanoTime();
+        for (ProviderHealth provider : this.providers) {
+            if (provider.isHealthy(now)) {
+                healthy.add(provider);
+            } else {
+                unhealthy.add(provider);
+            }
+        }
+
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    private void recordSuccess(ProviderHealth provider, long nanos) {
+        if (this.slowThresholdNanos > 0 && nanos > this.slowThresholdNanos) {
+            // Responded, but slowly enough that the other providers go first
+            provider.recordFailure(this.cooldownNanos);
+        } else {
+            provider.recordSuccess();
+        }
+    }
+
+    /**
+     * Get the failure to report if no provider succeeds.
+     * 
+     * @param error the failure from the last provider tried
+     * @return the failure as a SACException
+     */
+    private static SACException toSACException(Throwable error) {
+        if (error instanceof CompletionException || error instanceof ExecutionException) {
+            if (error.getCause() != null) {
+                error = error.getCause();
+            }
+        }
+
+        if (error instanceof SACException) {
+            return (SACException) error;
+        } else if (error instanceof TimeoutException) {
+            return new SACTimeoutException("Timed out getting credentials", error);
+        }
+
+        return new SACException("Failed to get credentials", error);
+    }
+
+    /**
+     * The ProviderHealth class tracks whether a provider is currently skipped.
+     */
+    private static class ProviderHealth {
+
+        private final CredentialsProvider provider;
+
+        /**
+         * The time until which the provider is skipped.
+         */
+        private long unhealthyUntil;
+
+        /**
+         * True while the provider is unhealthy.
+         */
+        private boolean unhealthy;
+
+        ProviderHealth(CredentialsProvider provider) {
+            this.provider = provider;
+        }
+
+        synchronized void recordSuccess() {
+            this.unhealthy = false;
+        }
+
+        synchronized void recordFailure(long cooldownNanos) {
+            this.unhealthy = true;
+            this.unhealthyUntil = System.nanoTime() + cooldownNanos;
+        }
+
+        /**
+         * Checks if the provider is healthy, or the cool-down has passed so it is
+         * tried again in its place.
+         */
+        synchronized boolean isHealthy(long now) {
+            return !this.unhealthy || now - this.unhealthyUntil >= 0;
+        }
+    }
+}
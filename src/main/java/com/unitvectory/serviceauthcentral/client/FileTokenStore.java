@@ -0,0 +1,404 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The FileTokenStore class provides a TokenStore backed by files in a local
+ * directory so that multiple processes on the same host can share tokens.
+ * 
+ * Each token request is stored in its own file, the refresh lock is an
+ * exclusive file lock so only one process on the host requests a new token at a
+ * time while the others wait and then reuse the stored token.
+ * 
+ * The namespace, typically the client id, is required so that processes
+ * authenticating as different clients can share the same directory without
+ * reading each other's tokens.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class FileTokenStore implements TokenStore {
+
+    /**
+     * The marker at the start of each token file
+     */
+    private static final int MAGIC = 0x53414301;
+
+    private static final String TOKEN_SUFFIX = ".token";
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * The interval between attempts to take the file lock when waiting with a
+     * timeout.
+     */
+    private static final long LOCK_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The directory the token files are stored in.
+     */
+    private final Path directory;
+
+    /**
+     * The namespace the tokens are stored under.
+     */
+    private final String namespace;
+
+    /**
+     * The file name prefix for the namespace.
+     */
+    private final String prefix;
+
+    /**
+     * The last token read from or written to each file, reused until the file
+     * changes.
+     */
+    private final Map<Path, Memo> memos = new ConcurrentHashMap<>();
+
+    /**
+     * The locks serializing threads in this process before taking the file lock.
+     */
+    private final Map<Path, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new file token store.
+     * 
+     * @param directory the directory to store the tokens in, created if missing
+     * @param namespace the namespace for the tokens such as the client id
+     */
+    @Builder
+    private FileTokenStore(@NonNull Path directory, @NonNull String namespace) {
+        if (namespace.isBlank()) {
+            throw new SACException("The token store namespace must not be blank");
+        }
+
+        this.directory = directory;
+        this.namespace = namespace;
+        this.prefix = sha256(this.namespace).substring(0, 16) + "-";
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SACException("Failed to create token store directory", e);
+        }
+    }
+
+    @Override
+    public TokenResponse get(TokenRequest request) {
+        Path file = this.tokenFile(request);
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // No token has been stored yet
+            this.memos.remove(file);
+            return null;
+        }
+
+        // Files are replaced atomically, so an unchanged file has the same token
+        Memo memo = this.memos.get(file);
+        if (memo != null && memo.matches(attributes)) {
+            return memo.response;
+        }
+
+        TokenResponse response;
+        try {
+            response = this.decode(request, Files.readAllBytes(file));
+        } catch (IOException e) {
+            // The file was replaced or removed while reading, treat as a miss
+            return null;
+        }
+
+        if (response != null) {
+            this.memos.put(file, new Memo(attributes.lastModifiedTime().toMillis(), attributes.fileKey(), response));
+        }
+
+        return response;
+    }
+
+    @Override
+    public void put(TokenRequest request, TokenResponse response) {
+        Path file = this.tokenFile(request);
+        try {
+            // Write to a temporary file and move it into place so readers never see a
+            // partially written token
+            Path temp = Files.createTempFile(this.directory, this.prefix, ".tmp");
+            try {
+                Files.write(temp, this.encode(request, response));
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new SACException("Failed to write token to store", e);
+        }
+    }
+
+    /**
+     * Remove all of the stored tokens in the namespace.
+     * 
+     * The token files are shared, so the tokens are also removed for every other
+     * process using the same directory and namespace; tokens in other namespaces
+     * are not affected.
+     */
+    @Override
+    public void clear() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, this.prefix + "*" + TOKEN_SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new SACException("Failed to clear token store", e);
+        }
+
+        this.memos.clear();
+    }
+
+    @Override
+    public RefreshLock lock(TokenRequest request) {
+        return this.lock(request, Deadline.NONE);
+    }
+
+    @Override
+    public RefreshLock lock(TokenRequest request, Duration timeout) {
+        return this.lock(request, Deadline.after(timeout));
+    }
+
+    private RefreshLock lock(TokenRequest request, Deadline deadline) {
+        Path file = this.lockFile(request);
+
+        // File locks are held by the process, so threads in this process must be
+        // serialized separately
+        ReentrantLock lock = this.locks.computeIfAbsent(file, k -> new ReentrantLock());
+        if (!deadline.isBounded()) {
+            lock.lock();
+        } else {
+            try {
+                if (!lock.tryLock(deadline.remainingNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS)) {
+                    throw new SACTimeoutException("Timed out waiting for token store lock");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted waiting for token store lock", e);
+            }
+        }
+
+        if (lock.getHoldCount() > 1) {
+            // Already holding the file lock from an outer call
+            return lock::unlock;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                FileLock fileLock = deadline.isBounded() ? tryLock(channel, deadline) : channel.lock();
+                return () -> {
+                    try {
+                        fileLock.release();
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new SACException("Failed to release token store lock", e);
+                    } finally {
+                        lock.unlock();
+                    }
+                };
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            lock.unlock();
+            throw new SACException("Failed to acquire token store lock", e);
+        } catch (RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Take the file lock, polling until the deadline passes as file locks cannot
+     * be waited on with a timeout.
+     */
+    private static FileLock tryLock(FileChannel channel, Deadline deadline) throws IOException {
+        while (true) {
+            FileLock fileLock = channel.tryLock();
+            if (fileLock != null) {
+                return fileLock;
+            }
+
+            long remaining = deadline.remainingNanos(LOCK_POLL_NANOS);
+            if (remaining <= 0) {
+                throw new SACTimeoutException("Timed out waiting for token store lock");
+            }
+
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted waiting for token store lock");
+            }
+        }
+    }
+
+    private Path tokenFile(TokenRequest request) {
+        return this.directory.resolve(this.prefix + this.requestHash(request) + TOKEN_SUFFIX);
+    }
+
+    private Path lockFile(TokenRequest request) {
+        return this.directory.resolve(this.prefix + this.requestHash(request) + LOCK_SUFFIX);
+    }
+
+    private String requestHash(TokenRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.namespace).append('\n').append(request.getAudience()).append('\n');
+        if (request.getScopes() != null) {
+            // Scopes are kept sorted by the TokenRequest
+            for (String scope : request.getScopes()) {
+                sb.append(scope).append(' ');
+            }
+        }
+        return sha256(sb.toString()).substring(0, 32);
+    }
+
+    private byte[] encode(TokenRequest request, TokenResponse response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(this.namespace);
+            writeString(out, request.getAudience());
+            Set<String> scopes = request.getScopes() == null ? Set.of() : request.getScopes();
+            out.writeInt(scopes.size());
+            for (String scope : scopes) {
+                out.writeUTF(scope);
+            }
+            out.writeLong(response.getCreated().toEpochMilli());
+            out.writeLong(response.getExpiresIn());
+            writeString(out, response.getTokenType());
+            writeString(out, response.getAccessToken());
+        }
+        return bytes.toByteArray();
+    }
+
+    private TokenResponse decode(TokenRequest request, byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || !this.namespace.equals(in.readUTF())) {
+                return null;
+            }
+
+            // Guard against a hash collision by checking the stored request matches
+            String audience = readString(in);
+            int scopeCount = in.readInt();
+            Set<String> scopes = new HashSet<>();
+            for (int i = 0; i < scopeCount; i++) {
+                scopes.add(in.readUTF());
+            }
+            Set<String> requestScopes = request.getScopes() == null ? Set.of() : request.getScopes();
+            if (!Objects.equals(audience, request.getAudience()) || !scopes.equals(requestScopes)) {
+                return null;
+            }
+
+            Instant created = Instant.ofEpochMilli(in.readLong());
+            long expiresIn = in.readLong();
+            String tokenType = readString(in);
+            String accessToken = readString(in);
+
+            return TokenResponse.builder().accessToken(accessToken).tokenType(tokenType).expiresIn(expiresIn)
+                    .created(created).build();
+        } catch (IOException e) {
+            // A corrupt or truncated file is treated as a miss
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new SACException("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * The last token seen for a file along with the file identity it was read
+     * from.
+     */
+    @AllArgsConstructor
+    private static class Memo {
+
+        private final long lastModified;
+
+        private final Object fileKey;
+
+        private final TokenResponse response;
+
+        boolean matches(BasicFileAttributes attributes) {
+            return this.lastModified == attributes.lastModifiedTime().toMillis()
+                    && Objects.equals(this.fileKey, attributes.fileKey());
+        }
+    }
+}
@@ -13,12 +13,18 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
-import java.time.Instant;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
-import com.google.auth.oauth2.IdTokenCredentials;
+import com.google.auth.oauth2.IdToken;
 import com.google.auth.oauth2.IdTokenProvider;
 
 import lombok.Builder;
@@ -28,6 +34,14 @@ import lombok.NonNull;
  * The GCPJwtCredentialsProvider class provides credentials from a GCP service
  * account.
  * 
+ * The identity token is reused until it nears expiration, at which point it is
+ * refreshed in the background while the current token continues to be used.
+ * Concurrent callers share a single refresh.
+ * 
+ * Looking up the application default credentials can do file and network I/O;
+ * with lazy initialization it is deferred until the first token is needed or
+ * warmUp is called.
+ * 
  * This is an optional dependency and requires including
  * google-auth-library-oauth2-http as it is an optional dependency.
  * 
@@ -40,60 +54,225 @@ import lombok.NonNull;
  */
 public class GCPJwtCredentialsProvider implements CredentialsProvider {
 
+    /**
+     * The default number of seconds before expiration to refresh the token
+     */
+    private static final int DEFAULT_REFRESH_THRESHOLD = 300;
+
+    /**
+     * The number of seconds before expiration the token is no longer used and the
+     * caller must wait for a new token
+     */
+    private static final int MINIMUM_VALIDITY = 60;
+
     private final String clientId;
 
-    private final IdTokenCredentials idTokenCredentials;
+    private final String targetAudience;
+
+    private final Lazy<IdTokenProvider> idTokenProvider;
+
+    private final int refreshThreshold;
+
+    private final Executor refreshExecutor;
+
+    /**
+     * The most recently retrieved credentials.
+     */
+    private volatile JwtAssertionCredentials cachedCredentials;
 
+    /**
+     * The refresh in progress, shared by concurrent callers.
+     */
+    private final AtomicReference<CompletableFuture<JwtAssertionCredentials>> refreshing = new AtomicReference<>();
+
+    /**
+     * Create a new GCP JWT credentials provider.
+     * 
+     * @param clientId          the client id
+     * @param targetAudience    the audience of the Google identity token
+     * @param googleCredentials the credentials; defaults to the application
+     *                          default credentials
+     * @param idTokenProvider   the identity token provider; defaults to the
+     *                          credentials
+     * @param refreshThreshold  the number of seconds before expiration to refresh
+     *                          the token in the background; defaults to 300
+     * @param refreshExecutor   the executor for background refreshes; defaults to
+     *                          the common pool
+     * @param lazyInit          true to defer getting the application default
+     *                          credentials until first use or warmUp; defaults to
+     *                          false
+     */
     @Builder
     private GCPJwtCredentialsProvider(@NonNull String clientId, @NonNull String targetAudience,
-            GoogleCredentials googleCredentials) {
+            GoogleCredentials googleCredentials, IdTokenProvider idTokenProvider, Integer refreshThreshold,
+            Executor refreshExecutor, Boolean lazyInit) {
         this.clientId = clientId;
 
-        // Use the provided credentials or get the application default credentials
-        GoogleCredentials credentials = googleCredentials;
-        if (credentials == null) {
-            // Credentials not provided, get the application default credentials
-            try {
-                credentials = GoogleCredentials.getApplicationDefault();
-            } catch (IOException e) {
-                throw new SACException("Failed to get application default credentials", e);
-            }
+        // Setting the audience is a key part of the security model
+        this.targetAudience = targetAudience;
+
+        if (idTokenProvider != null) {
+            this.idTokenProvider = Lazy.value(idTokenProvider);
+        } else {
+            this.idTokenProvider = Lazy.of(() -> toIdTokenProvider(googleCredentials),
+                    lazyInit != null && lazyInit);
         }
 
-        // Check if the credentials are an IdTokenProvider, if it isn't it cannot be
-        // used otherwise
-        if (!(credentials instanceof IdTokenProvider)) {
-            throw new SACException("GoogleCredentials is not an IdTokenProvider");
+        if (refreshThreshold == null) {
+            this.refreshThreshold = DEFAULT_REFRESH_THRESHOLD;
+        } else {
+            this.refreshThreshold = refreshThreshold;
         }
 
-        IdTokenProvider idTokenProvider = (IdTokenProvider) credentials;
+        if (refreshExecutor == null) {
+            this.refreshExecutor = ForkJoinPool.commonPool();
+        } else {
+            this.refreshExecutor = refreshExecutor;
+        }
+    }
 
-        // Create IdTokenCredentials with the target audience
-        this.idTokenCredentials = IdTokenCredentials.newBuilder()
-                .setIdTokenProvider(idTokenProvider)
-                // Setting the audience is a key part of the security model
-                .setTargetAudience(targetAudience)
-                .build();
+    /**
+     * Get the application default credentials if none were provided, unless
+     * already done.
+     */
+    @Override
+    public void warmUp() {
+        this.idTokenProvider.get();
     }
 
     @Override
     public SACCredentials getCredentials() {
 
-        // Get the ID token, google-auth-library-java will automatically refresh the
-        // token
-        AccessToken accessToken;
+        JwtAssertionCredentials credentials = this.cachedCredentials;
+        if (credentials != null && !credentials.isExpired(this.refreshThreshold)) {
+            // Token is valid and not near expiration, use it.
+            return credentials;
+        }
+
+        if (credentials != null && !credentials.isExpired(MINIMUM_VALIDITY)) {
+            // Token is near expiration, refresh it in the background and use it for now.
+            this.refresh(this.refreshExecutor);
+            return credentials;
+        }
+
+        // No usable token, wait for a new one; this thread does the refresh unless
+        // another caller already is
+        try {
+            return this.refresh(Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SACException) {
+                throw (SACException) e.getCause();
+            }
+            throw new SACException("Failed to get Google identity token", e.getCause());
+        }
+    }
+
+    /**
+     * Get the credentials without blocking; when no usable token is cached the
+     * future completes once the refresh on the refresh executor completes.
+     * 
+     * @return the future completed with the credentials
+     */
+    @Override
+    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+
+        JwtAssertionCredentials credentials = this.cachedCredentials;
+        if (credentials != null && !credentials.isExpired(this.refreshThreshold)) {
+            // Token is valid and not near expiration, use it.
+            return CompletableFuture.completedFuture(credentials);
+        }
+
+        if (credentials != null && !credentials.isExpired(MINIMUM_VALIDITY)) {
+            // Token is near expiration, refresh it in the background and use it for now.
+            this.refresh(this.refreshExecutor);
+            return CompletableFuture.completedFuture(credentials);
+        }
+
+        // No usable token, complete once the shared refresh completes
+        return this.refresh(this.refreshExecutor).thenApply(refreshed -> refreshed);
+    }
+
+    /**
+     * Start refreshing the token unless a refresh is already in progress.
+     * 
+     * @param executor the executor to run the refresh on
+     * @return the refresh in progress
+     */
+    private CompletableFuture<JwtAssertionCredentials> refresh(Executor executor) {
+        CompletableFuture<JwtAssertionCredentials> future = new CompletableFuture<>();
+        CompletableFuture<JwtAssertionCredentials> existing = this.refreshing.compareAndExchange(null, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    JwtAssertionCredentials credentials = this.fetchCredentials();
+                    this.cachedCredentials = credentials;
+                    this.refreshing.set(null);
+                    future.complete(credentials);
+                } catch (Throwable t) {
+                    this.refreshing.set(null);
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.set(null);
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private JwtAssertionCredentials fetchCredentials() {
+        CredentialsMintEvent event = JfrEvents.AVAILABLE ? new CredentialsMintEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        IdToken idToken;
         try {
-            this.idTokenCredentials.getIdToken();
-            accessToken = idTokenCredentials.refreshAccessToken();
+            idToken = this.idTokenProvider.get().idTokenWithAudience(this.targetAudience, List.of());
         } catch (IOException e) {
             throw new SACException("Failed to get Google identity token", e);
         }
 
-        String idToken = accessToken.getTokenValue();
-        Instant expiration = accessToken.getExpirationTime().toInstant();
+        if (event != null && event.shouldCommit()) {
+            event.provider = GCPJwtCredentialsProvider.class.getSimpleName();
+            event.commit();
+        }
+
+        if (idToken == null || idToken.getExpirationTime() == null) {
+            throw new SACException("Google identity token missing expiration");
+        }
+
+        String token = idToken.getTokenValue();
+        Instant expiration = idToken.getExpirationTime().toInstant();
 
-        return JwtAssertionCredentials.builder().clientId(this.clientId).jwtAssertion(idToken).expiration(expiration)
+        return JwtAssertionCredentials.builder().clientId(this.clientId).jwtAssertion(token).expiration(expiration)
                 .build();
     }
 
+    private static IdTokenProvider toIdTokenProvider(GoogleCredentials googleCredentials) {
+        // Use the provided credentials or get the application default credentials
+        GoogleCredentials credentials = googleCredentials;
+        if (credentials == null) {
+            // Credentials not provided, get the application default credentials
+            try {
+                credentials = GoogleCredentials.getApplicationDefault();
+            } catch (IOException e) {
+                throw new SACException("Failed to get application default credentials", e);
+            }
+        }
+
+        // Check if the credentials are an IdTokenProvider, if it isn't it cannot be
+        // used otherwise
+        if (!(credentials instanceof IdTokenProvider)) {
+            throw new SACException("GoogleCredentials is not an IdTokenProvider");
+        }
+
+        return (IdTokenProvider) credentials;
+    }
+
 }
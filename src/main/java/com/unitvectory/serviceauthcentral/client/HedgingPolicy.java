@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * The HedgingPolicy class provides the settings for hedged token requests.
+ * 
+ * When hedging is enabled and a token request has not responded within the
+ * configured percentile of the recent request latencies, a second identical
+ * request is sent and whichever responds first is used, the other is
+ * cancelled. A response from an unavailable endpoint, such as a 503 or 429, is
+ * only used if the other request does not succeed either. The fraction of requests that can be hedged is capped so hedging
+ * cannot multiply the load on ServiceAuthCentral, and a request is only hedged
+ * when the TokenRequestLimits allow another request without waiting.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Value
+public class HedgingPolicy {
+
+    /**
+     * The percentile of the recent latencies after which a request is hedged;
+     * defaults to 0.95
+     */
+    private final double percentile;
+
+    /**
+     * The delay before hedging used until enough latencies have been recorded;
+     * defaults to 1 second
+     */
+    private final Duration initialDelay;
+
+    /**
+     * The minimum delay before hedging; defaults to 10 milliseconds
+     */
+    private final Duration minDelay;
+
+    /**
+     * The maximum fraction of requests that are hedged; defaults to 0.1
+     */
+    private final double maxHedgeRatio;
+
+    /**
+     * The number of recent latencies the percentile is calculated from; defaults
+     * to 100
+     */
+    private final int sampleSize;
+
+    @Builder
+    private HedgingPolicy(double percentile, @NonNull Duration initialDelay, @NonNull Duration minDelay,
+            double maxHedgeRatio, int sampleSize) {
+        if (!(percentile > 0 && percentile <= 1)) {
+            throw new SACException("percentile must be greater than 0 and at most 1");
+        }
+        if (initialDelay.isNegative()) {
+            throw new SACException("initialDelay must not be negative");
+        }
+        if (minDelay.isNegative()) {
+            throw new SACException("minDelay must not be negative");
+        }
+        if (!(maxHedgeRatio >= 0 && maxHedgeRatio < Double.POSITIVE_INFINITY)) {
+            throw new SACException("maxHedgeRatio must not be negative");
+        }
+        if (sampleSize <= 0) {
+            throw new SACException("sampleSize must be positive");
+        }
+
+        this.percentile = percentile;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * The builder, holding the defaults for the settings that are not set.
+     */
+    public static class HedgingPolicyBuilder {
+
+        private double percentile = 0.95;
+
+        private Duration initialDelay = Duration.ofSeconds(1);
+
+        private Duration minDelay = Duration.ofMillis(10);
+
+        private double maxHedgeRatio = 0.1;
+
+        private int sampleSize = 100;
+    }
+}
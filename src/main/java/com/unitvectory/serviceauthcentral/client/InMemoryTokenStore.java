@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The InMemoryTokenStore class is the default TokenStore keeping the tokens in
+ * memory for the current process.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class InMemoryTokenStore implements TokenStore {
+
+    /**
+     * The cached tokens.
+     */
+    private final Map<TokenRequest, TokenResponse> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * The refresh locks, one per token request.
+     */
+    private final Map<TokenRequest, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public TokenResponse get(TokenRequest request) {
+        return this.tokens.get(request);
+    }
+
+    @Override
+    public void put(TokenRequest request, TokenResponse response) {
+        this.tokens.put(request, response);
+    }
+
+    @Override
+    public void clear() {
+        this.tokens.clear();
+    }
+
+    @Override
+    public RefreshLock lock(TokenRequest request) {
+        ReentrantLock lock = this.locks.computeIfAbsent(request, k -> new ReentrantLock());
+        lock.lock();
+        return lock::unlock;
+    }
+
+    @Override
+    public RefreshLock lock(TokenRequest request, Duration timeout) {
+        ReentrantLock lock = this.locks.computeIfAbsent(request, k -> new ReentrantLock());
+        try {
+            if (!lock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new SACTimeoutException("Timed out waiting for token store lock");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted waiting for token store lock", e);
+        }
+        return lock::unlock;
+    }
+}
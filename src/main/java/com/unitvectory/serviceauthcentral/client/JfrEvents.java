@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+/**
+ * The JfrEvents class checks whether the JFR events can be recorded.
+ * 
+ * The events extend jdk.jfr.Event, so they can only be loaded when the runtime
+ * includes the jdk.jfr module, which a custom runtime image built with jlink may
+ * leave out. Without it no events are created and the client works as usual.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+final class JfrEvents {
+
+    /**
+     * True if the runtime includes the jdk.jfr module.
+     */
+    static final boolean AVAILABLE = isAvailable();
+
+    private JfrEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
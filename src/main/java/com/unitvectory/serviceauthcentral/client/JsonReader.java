@@ -0,0 +1,587 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JsonReader class is a minimal JSON parser for the small, fixed documents
+ * the client reads: token responses, error responses and service account
+ * files.
+ * 
+ * Objects are read as a Map, arrays as a List, strings as String, numbers as
+ * Long when they are integral and fit, otherwise BigDecimal, and true, false
+ * and null as Boolean and null.
+ * 
+ * Hot paths such as verifying tokens can instead pull the fields one at a time
+ * with beginObject, hasNext, nextName and the next methods, which does not
+ * build a tree.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JsonReader {
+
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * The container state before its first element or after a comma.
+     */
+    private static final byte EXPECT_ELEMENT = 0;
+
+    /**
+     * The container state after an element, expecting a comma or the end.
+     */
+    private static final byte AFTER_ELEMENT = 1;
+
+    private final String json;
+
+    private int pos;
+
+    /**
+     * The state of each open container when pulling; index zero is the top level.
+     */
+    private final byte[] states = new byte[MAX_DEPTH + 1];
+
+    /**
+     * The number of open containers when pulling.
+     */
+    private int depth;
+
+    /**
+     * Create a reader to pull values from the JSON document.
+     * 
+     * @param json the JSON document
+     */
+    JsonReader(String json) {
+        if (json == null) {
+            throw new SACException("Invalid JSON: no content");
+        }
+
+        this.json = json;
+        this.pos = 0;
+    }
+
+    /**
+     * Consumes the start of an object.
+     */
+    void beginObject() {
+        this.beginContainer('{');
+    }
+
+    /**
+     * Consumes the end of an object.
+     */
+    void endObject() {
+        this.endContainer('}');
+    }
+
+    /**
+     * Consumes the start of an array.
+     */
+    void beginArray() {
+        this.beginContainer('[');
+    }
+
+    /**
+     * Consumes the end of an array.
+     */
+    void endArray() {
+        this.endContainer(']');
+    }
+
+    /**
+     * Checks if the current object or array has another element, consuming the
+     * separating comma.
+     * 
+     * @return true if there is another element
+     */
+    boolean hasNext() {
+        skipWhitespace();
+        char c = peek();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+
+        if (this.states[this.depth] == AFTER_ELEMENT) {
+            if (c != ',') {
+                throw error("expected ','");
+            }
+            pos++;
+            skipWhitespace();
+            this.states[this.depth] = EXPECT_ELEMENT;
+        }
+
+        return true;
+    }
+
+    /**
+     * Consumes the next field name in the current object.
+     * 
+     * @return the field name
+     */
+    String nextName() {
+        if (!this.hasNext()) {
+            throw error("expected field name");
+        }
+        if (peek() != '"') {
+            throw error("expected field name");
+        }
+
+        String name = readString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        return name;
+    }
+
+    /**
+     * Checks if the next value is a string.
+     * 
+     * @return true if the next value is a string
+     */
+    boolean isStringNext() {
+        skipWhitespace();
+        return peek() == '"';
+    }
+
+    /**
+     * Checks if the next value is an array.
+     * 
+     * @return true if the next value is an array
+     */
+    boolean isArrayNext() {
+        skipWhitespace();
+        return peek() == '[';
+    }
+
+    /**
+     * Consumes the next value, which must be a string.
+     * 
+     * @return the string
+     */
+    String nextString() {
+        this.beforeValue();
+        if (peek() != '"') {
+            throw error("expected string");
+        }
+        String value = readString();
+        this.states[this.depth] = AFTER_ELEMENT;
+        return value;
+    }
+
+    /**
+     * Consumes the next value, which must be an integral number.
+     * 
+     * @return the number
+     */
+    long nextLong() {
+        this.beforeValue();
+        Object value = readValue(this.depth);
+        this.states[this.depth] = AFTER_ELEMENT;
+        if (value instanceof Long) {
+            return (Long) value;
+        } else if (value instanceof BigDecimal) {
+            try {
+                return ((BigDecimal) value).longValueExact();
+            } catch (ArithmeticException e) {
+                throw error("expected integer");
+            }
+        }
+
+        throw error("expected integer");
+    }
+
+    /**
+     * Consumes and discards the next value.
+     */
+    void skipValue() {
+        this.beforeValue();
+        readValue(this.depth);
+        this.states[this.depth] = AFTER_ELEMENT;
+    }
+
+    /**
+     * Checks that the whole document was consumed.
+     */
+    void end() {
+        skipWhitespace();
+        if (this.depth != 0 || pos != json.length()) {
+            throw error("unexpected trailing content");
+        }
+    }
+
+    private void beginContainer(char open) {
+        this.beforeValue();
+        if (this.depth >= MAX_DEPTH) {
+            throw error("nesting too deep");
+        }
+        expect(open);
+        this.depth++;
+        this.states[this.depth] = EXPECT_ELEMENT;
+    }
+
+    private void endContainer(char close) {
+        skipWhitespace();
+        if (this.depth == 0) {
+            throw error("unexpected '" + close + "'");
+        }
+        expect(close);
+        this.depth--;
+        this.states[this.depth] = AFTER_ELEMENT;
+    }
+
+    private void beforeValue() {
+        if (this.depth > 0 && !this.hasNext()) {
+            throw error("expected value");
+        }
+        skipWhitespace();
+    }
+
+    /**
+     * Parses a JSON document whose top level value is an object.
+     * 
+     * @param json the JSON document
+     * @return the parsed object
+     * @throws SACException if the document is not a valid JSON object
+     */
+    static Map<String, Object> parseObject(String json) {
+        JsonReader reader = new JsonReader(json);
+        reader.skipWhitespace();
+        Map<String, Object> object = reader.readObject(0);
+        reader.skipWhitespace();
+        if (reader.pos != json.length()) {
+            throw reader.error("unexpected trailing content");
+        }
+
+        return object;
+    }
+
+    /**
+     * Gets a required string field.
+     * 
+     * @param object the JSON object
+     * @param name   the field name
+     * @return the string value
+     * @throws SACException if the field is missing or not a string
+     */
+    static String getString(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (!(value instanceof String)) {
+            throw new SACException("Invalid JSON: expected string field '" + name + "'");
+        }
+
+        return (String) value;
+    }
+
+    /**
+     * Gets an optional string field.
+     * 
+     * @param object the JSON object
+     * @param name   the field name
+     * @return the string value; null if the field is missing or null
+     * @throws SACException if the field is not a string
+     */
+    static String getOptionalString(Map<String, Object> object, String name) {
+        if (object.get(name) == null) {
+            return null;
+        }
+
+        return getString(object, name);
+    }
+
+    /**
+     * Gets a required integral field; numeric strings are accepted as well.
+     * 
+     * @param object the JSON object
+     * @param name   the field name
+     * @return the long value
+     * @throws SACException if the field is missing or not an integer
+     */
+    static long getLong(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        try {
+            if (value instanceof Long) {
+                return (Long) value;
+            } else if (value instanceof BigDecimal) {
+                return ((BigDecimal) value).longValueExact();
+            } else if (value instanceof String) {
+                return Long.parseLong((String) value);
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            // Fall through to the error below
+        }
+
+        throw new SACException("Invalid JSON: expected integer field '" + name + "'");
+    }
+
+    /**
+     * Gets a required array of strings field.
+     * 
+     * @param object the JSON object
+     * @param name   the field name
+     * @return the list of strings
+     * @throws SACException if the field is missing or not an array of strings
+     */
+    static List<String> getStringList(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (!(value instanceof List)) {
+            throw new SACException("Invalid JSON: expected array field '" + name + "'");
+        }
+
+        List<String> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (!(item instanceof String)) {
+                throw new SACException("Invalid JSON: expected array of strings in '" + name + "'");
+            }
+            list.add((String) item);
+        }
+
+        return Collections.unmodifiableList(list);
+    }
+
+    private Object readValue(int depth) {
+        if (pos >= json.length()) {
+            throw error("unexpected end of input");
+        }
+
+        char c = json.charAt(pos);
+        switch (c) {
+            case '{':
+                return readObject(depth + 1);
+            case '[':
+                return readArray(depth + 1);
+            case '"':
+                return readString();
+            case 't':
+                readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                readLiteral("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw error("nesting too deep");
+        }
+
+        expect('{');
+        Map<String, Object> object = new LinkedHashMap<>();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("expected field name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            object.put(name, readValue(depth));
+            skipWhitespace();
+
+            char c = next();
+            if (c == '}') {
+                return object;
+            } else if (c != ',') {
+                throw error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw error("nesting too deep");
+        }
+
+        expect('[');
+        List<Object> array = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+
+        while (true) {
+            skipWhitespace();
+            array.add(readValue(depth));
+            skipWhitespace();
+
+            char c = next();
+            if (c == ']') {
+                return array;
+            } else if (c != ',') {
+                throw error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() {
+        expect('"');
+
+        // Fast path for strings without escapes, the common case
+        int start = pos;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return json.substring(start, pos++);
+            } else if (c == '\\') {
+                break;
+            } else if (c < 0x20) {
+                throw error("unescaped control character in string");
+            }
+            pos++;
+        }
+
+        StringBuilder sb = new StringBuilder(json.substring(start, pos));
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return sb.toString();
+            } else if (c < 0x20) {
+                throw error("unescaped control character in string");
+            } else if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            char escape = next();
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escape);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw error("invalid unicode escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("invalid escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = pos;
+        boolean integral = true;
+        if (peek() == '-') {
+            pos++;
+        }
+
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        String number = json.substring(start, pos);
+        try {
+            if (integral && number.length() < 19) {
+                return Long.parseLong(number);
+            }
+            return new BigDecimal(number);
+        } catch (NumberFormatException e) {
+            throw error("invalid number '" + number + "'");
+        }
+    }
+
+    private void readLiteral(String literal) {
+        if (!json.startsWith(literal, pos)) {
+            throw error("unexpected token");
+        }
+        pos += literal.length();
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= json.length()) {
+            throw error("unexpected end of input");
+        }
+        return json.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            pos--;
+            throw error("expected '" + expected + "'");
+        }
+    }
+
+    private SACException error(String message) {
+        return new SACException("Invalid JSON at position " + pos + ": " + message);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+/**
+ * The JsonWriter class is a minimal JSON writer for the small, flat objects the
+ * client creates, such as the header and claims of a JWT.
+ * 
+ * Fields are written in the order they are added.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder sb;
+
+    private boolean empty;
+
+    /**
+     * Creates a new writer for a JSON object.
+     */
+    JsonWriter() {
+        this.sb = new StringBuilder(128).append('{');
+        this.empty = true;
+    }
+
+    /**
+     * Adds a string field to the object.
+     * 
+     * @param name  the field name
+     * @param value the field value
+     * @return this writer
+     */
+    JsonWriter field(String name, String value) {
+        name(name);
+        if (value == null) {
+            sb.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a number field to the object.
+     * 
+     * @param name  the field name
+     * @param value the field value
+     * @return this writer
+     */
+    JsonWriter field(String name, long value) {
+        name(name);
+        sb.append(value);
+        return this;
+    }
+
+    /**
+     * Closes the object and returns the JSON.
+     * 
+     * @return the JSON string
+     */
+    @Override
+    public String toString() {
+        return sb.toString() + '}';
+    }
+
+    private void name(String name) {
+        if (!empty) {
+            sb.append(',');
+        }
+        empty = false;
+        string(name);
+        sb.append(':');
+    }
+
+    private void string(String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
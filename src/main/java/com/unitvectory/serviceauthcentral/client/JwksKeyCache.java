@@ -0,0 +1,270 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+
+/**
+ * The JwksKeyCache class caches the public keys of a JSON Web Key Set by key
+ * id.
+ * 
+ * The keys are loaded on first use and refreshed in the background once they
+ * are older than the refresh interval while the current keys continue to be
+ * used. An unknown key id triggers an immediate refetch, at most once per
+ * minimum refetch interval so tokens with made up key ids cannot flood the
+ * JWKS endpoint.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JwksKeyCache {
+
+    private final Supplier<String> source;
+
+    private final long refreshIntervalNanos;
+
+    private final long minRefetchIntervalNanos;
+
+    private final Executor refreshExecutor;
+
+    /**
+     * The cached keys by key id; replaced as a whole on refresh.
+     */
+    private volatile Map<String, PublicKey> keys;
+
+    /**
+     * The time the keys were last loaded.
+     */
+    private volatile long loadedAt;
+
+    /**
+     * The time of the last fetch attempt, successful or not.
+     */
+    private volatile long lastFetch;
+
+    /**
+     * True once the keys have been fetched at least once.
+     */
+    private boolean fetched;
+
+    /**
+     * True while a background refresh is in progress.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    JwksKeyCache(@NonNull Supplier<String> source, long refreshIntervalNanos, long minRefetchIntervalNanos,
+            @NonNull Executor refreshExecutor) {
+        this.source = source;
+        this.refreshIntervalNanos = refreshIntervalNanos;
+        this.minRefetchIntervalNanos = minRefetchIntervalNanos;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Get the public key for the key id.
+     * 
+     * @param keyId the key id
+     * @return the public key
+     * @throws SACTokenVerificationException if the key is unknown
+     * @throws SACKeySetUnavailableException  if the keys could not be loaded
+     */
+    PublicKey getKey(@NonNull String keyId) {
+        Map<String, PublicKey> current = this.keys;
+        if (current == null) {
+            current = this.load(null);
+        }
+
+        PublicKey key = current.get(keyId);
+        if (key != null) {
+            long now = System.nanoTime();
+            if (now - this.loadedAt > this.refreshIntervalNanos
+                    && now - this.lastFetch >= this.minRefetchIntervalNanos) {
+                this.refreshAhead();
+            }
+            return key;
+        }
+
+        // The keys may have been rotated, refetch unless that was done recently
+        key = this.load(keyId).get(keyId);
+        if (key == null) {
+            throw new SACTokenVerificationException("Unknown key id");
+        }
+
+        return key;
+    }
+
+    /**
+     * Load the keys unless another caller already loaded them or they were
+     * fetched too recently.
+     * 
+     * @param keyId the key id that is needed; null if any keys are needed
+     * @return the keys
+     */
+    private synchronized Map<String, PublicKey> load(String keyId) {
+        Map<String, PublicKey> current = this.keys;
+        if (current != null && (keyId == null || current.containsKey(keyId))) {
+            return current;
+        }
+
+        long now = System.nanoTime();
+        if (this.fetched && now - this.lastFetch < this.minRefetchIntervalNanos) {
+            if (current == null) {
+                throw new SACKeySetUnavailableException("Failed to load JWKS");
+            }
+            return current;
+        }
+
+        this.fetched = true;
+        this.lastFetch = now;
+        try {
+            this.keys = parse(this.source.get());
+            this.loadedAt = System.nanoTime();
+        } catch (RuntimeException e) {
+            if (current == null) {
+                throw new SACKeySetUnavailableException("Failed to load JWKS", e);
+            }
+            // Keep using the previous keys
+        }
+
+        return this.keys;
+    }
+
+    private void refreshAhead() {
+        if (!this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    synchronized (this) {
+                        this.lastFetch = System.nanoTime();
+                        this.keys = parse(this.source.get());
+                        this.loadedAt = System.nanoTime();
+                    }
+                } catch (RuntimeException e) {
+                    // The current keys continue to be used until the next attempt
+                } finally {
+                    this.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Parse the RSA signing keys from a JWKS document, skipping other keys and
+     * RSA keys that cannot be parsed.
+     * 
+     * @param json the JWKS document
+     * @return the keys by key id
+     */
+    static Map<String, PublicKey> parse(String json) {
+        Map<String, PublicKey> keys = new HashMap<>();
+
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("keys")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String kid = null;
+                String kty = null;
+                String use = null;
+                String n = null;
+                String e = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (!reader.isStringNext()) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    switch (name) {
+                        case "kid":
+                            kid = reader.nextString();
+                            break;
+                        case "kty":
+                            kty = reader.nextString();
+                            break;
+                        case "use":
+                            use = reader.nextString();
+                            break;
+                        case "n":
+                            n = reader.nextString();
+                            break;
+                        case "e":
+                            e = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (kid != null && "RSA".equals(kty) && (use == null || "sig".equals(use)) && n != null
+                        && e != null) {
+                    PublicKey key = rsaPublicKey(n, e);
+                    if (key != null) {
+                        keys.put(kid, key);
+                    }
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        reader.end();
+
+        return Collections.unmodifiableMap(keys);
+    }
+
+    /**
+     * Create the RSA public key.
+     * 
+     * @param n the base64url encoded modulus
+     * @param e the base64url encoded exponent
+     * @return the public key; null if the key is invalid so one bad key does not
+     *         make the rest of the key set unusable
+     */
+    private static PublicKey rsaPublicKey(String n, String e) {
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            RSAPublicKeySpec spec = new RSAPublicKeySpec(new BigInteger(1, decoder.decode(n)),
+                    new BigInteger(1, decoder.decode(e)));
+            return KeyFactory.getInstance("RSA").generatePublic(spec);
+        } catch (IllegalArgumentException | GeneralSecurityException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.util.Arrays;
+
+/**
+ * The LatencyRecorder class keeps the most recent latencies to calculate
+ * percentiles from.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class LatencyRecorder {
+
+    /**
+     * The recent latencies in nanoseconds, used as a ring buffer.
+     */
+    private final long[] samples;
+
+    /**
+     * The total number of latencies recorded.
+     */
+    private long count;
+
+    LatencyRecorder(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new SACException("sampleSize must be positive");
+        }
+        this.samples = new long[sampleSize];
+    }
+
+    /**
+     * Record a latency.
+     * 
+     * @param nanos the latency in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        this.samples[(int) (this.count % this.samples.length)] = nanos;
+        this.count++;
+    }
+
+    /**
+     * Get the number of latencies available.
+     * 
+     * @return the number of latencies, at most the sample size
+     */
+    synchronized int size() {
+        return (int) Math.min(this.count, this.samples.length);
+    }
+
+    /**
+     * Get the percentile of the recent latencies.
+     * 
+     * @param percentile the percentile between 0 and 1
+     * @return the latency in nanoseconds; -1 if no latencies are recorded
+     */
+    long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            int size = (int) Math.min(this.count, this.samples.length);
+            if (size == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(this.samples, size);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+
+/**
+ * The Lazy class holds a value that is created on first use, so work done by a
+ * constructor can be deferred until the value is needed.
+ * 
+ * The value is created once even when requested by several threads at the same
+ * time. If creating it fails the next request tries again.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+final class Lazy<T> {
+
+    /**
+     * Creates the value; null once the value is created.
+     */
+    private Supplier<T> initializer;
+
+    /**
+     * The value; null until created.
+     */
+    private volatile T value;
+
+    private Lazy(Supplier<T> initializer, T value) {
+        this.initializer = initializer;
+        this.value = value;
+    }
+
+    /**
+     * Create a value on first use.
+     * 
+     * @param <T>         the type of the value
+     * @param initializer creates the value, which must not be null
+     * @return the lazy value
+     */
+    static <T> Lazy<T> of(@NonNull Supplier<T> initializer) {
+        return new Lazy<>(initializer, null);
+    }
+
+    /**
+     * Wrap a value that has already been created.
+     * 
+     * @param <T>   the type of the value
+     * @param value the value
+     * @return the lazy value
+     */
+    static <T> Lazy<T> value(@NonNull T value) {
+        return new Lazy<>(null, value);
+    }
+
+    /**
+     * Create the value now or on first use.
+     * 
+     * @param <T>         the type of the value
+     * @param initializer creates the value, which must not be null
+     * @param deferred    true to create the value on first use
+     * @return the lazy value
+     */
+    static <T> Lazy<T> of(@NonNull Supplier<T> initializer, boolean deferred) {
+        return deferred ? of(initializer) : value(initializer.get());
+    }
+
+    /**
+     * Get the value, creating it if this is the first use.
+     * 
+     * @return the value
+     * @throws SACException if the value could not be created
+     */
+    T get() {
+        T result = this.value;
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (this) {
+            result = this.value;
+            if (result == null) {
+                result = this.initializer.get();
+                if (result == null) {
+                    throw new SACException("Lazy value was not created");
+                }
+
+                this.value = result;
+                this.initializer = null;
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Checks if the value has been created.
+     * 
+     * @return true once the value is created
+     */
+    boolean isInitialized() {
+        return this.value != null;
+    }
+}
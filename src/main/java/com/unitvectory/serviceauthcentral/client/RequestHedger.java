@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import lombok.NonNull;
+
+/**
+ * The RequestHedger class sends requests applying a HedgingPolicy.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class RequestHedger {
+
+    /**
+     * The minimum number of latencies before the percentile is used.
+     */
+    private static final int MIN_SAMPLES = 10;
+
+    /**
+     * The maximum hedge budget that can accumulate while requests are fast.
+     */
+    private static final double MAX_BUDGET = 10;
+
+    private final HedgingPolicy policy;
+
+    private final LatencyRecorder latencies;
+
+    /**
+     * The number of hedges allowed, increased by the hedge ratio for each request;
+     * starts with one so a slow first request can be hedged.
+     */
+    private double budget = 1;
+
+    RequestHedger(@NonNull HedgingPolicy policy) {
+        this.policy = policy;
+        this.latencies = new LatencyRecorder(policy.getSampleSize());
+    }
+
+    /**
+     * Send the request, hedging it if it is slow.
+     * 
+     * @param <T>         the response body type
+     * @param httpClient  the http client
+     * @param request     the request
+     * @param bodyHandler the response body handler
+     * @return the first response
+     * @throws IOException          if both requests fail
+     * @throws InterruptedException if interrupted while waiting
+     */
+    <T> HttpResponse<T> send(HttpClient httpClient, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        return this.send(httpClient, request, bodyHandler, null);
+    }
+
+    /**
+     * Send the request, hedging it if it is slow and the limiter allows another
+     * request without waiting.
+     * 
+     * @param <T>         the response body type
+     * @param httpClient  the http client
+     * @param request     the request
+     * @param bodyHandler the response body handler
+     * @param limiter     the limiter the hedged request must be allowed by, the
+     *                    first request already holding its own permit; null for
+     *                    no limit
+     * @return the first response
+     * @throws IOException          if both requests fail
+     * @throws InterruptedException if interrupted while waiting
+     */
+    <T> HttpResponse<T> send(HttpClient httpClient, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+            TokenRequestLimiter limiter) throws IOException, InterruptedException {
+        this.addBudget();
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> first = httpClient.sendAsync(request, bodyHandler);
+        CompletableFuture<HttpResponse<T>> second = null;
+        TokenRequestLimiter.Permit hedgePermit = null;
+        try {
+            try {
+                HttpResponse<T> response = first.get(this.hedgeDelay(), TimeUnit.NANOSECONDS);
+                this.latencies.record(System.nanoTime() - start);
+                return response;
+            } catch (TimeoutException e) {
+                // The request is slow, hedge it if allowed
+            }
+
+            boolean hedge = this.tryHedge();
+            if (hedge && limiter != null) {
+                // The hedge is an additional request so it needs its own permit
+                hedgePermit = limiter.tryAcquire();
+                if (hedgePermit == null) {
+                    // No capacity to spare, so the hedge is not used up
+                    this.refundHedge();
+                    hedge = false;
+                }
+            }
+
+            if (!hedge) {
+                HttpResponse<T> response = first.get();
+                this.latencies.record(System.nanoTime() - start);
+                return response;
+            }
+
+            second = httpClient.sendAsync(request, bodyHandler);
+            HttpResponse<T> response = firstSuccessful(first, second).get();
+            this.latencies.record(System.nanoTime() - start);
+            return response;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Token request failed", cause);
+        } finally {
+            // Cancel whichever request is still outstanding
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+            if (hedgePermit != null) {
+                hedgePermit.close();
+            }
+        }
+    }
+
+    /**
+     * Get the delay before hedging.
+     * 
+     * @return the delay in nanoseconds
+     */
+    private long hedgeDelay() {
+        long delay;
+        if (this.latencies.size() < MIN_SAMPLES) {
+            delay = this.policy.getInitialDelay().toNanos();
+        } else {
+            delay = this.latencies.percentile(this.policy.getPercentile());
+        }
+
+        return Math.max(delay, this.policy.getMinDelay().toNanos());
+    }
+
+    private synchronized void addBudget() {
+        this.budget = Math.min(MAX_BUDGET, this.budget + this.policy.getMaxHedgeRatio());
+    }
+
+    private synchronized boolean tryHedge() {
+        if (this.budget < 1) {
+            return false;
+        }
+
+        this.budget -= 1;
+        return true;
+    }
+
+    private synchronized void refundHedge() {
+        this.budget = Math.min(MAX_BUDGET, this.budget + 1);
+    }
+
+    /**
+     * Complete with the first successful response. A response from an endpoint
+     * that is unavailable, such as a 503 or 429, is only used if the other
+     * request fails as well; the first error is used if both requests fail.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> firstSuccessful(CompletableFuture<HttpResponse<T>> first,
+            CompletableFuture<HttpResponse<T>> second) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(2);
+        AtomicReference<HttpResponse<T>> fallbackResponse = new AtomicReference<>();
+        AtomicReference<Throwable> fallbackError = new AtomicReference<>();
+        BiConsumer<HttpResponse<T>, Throwable> completion = (response, error) -> {
+            if (error == null && !SACClientDefault.isUnavailable(response.statusCode())) {
+                result.complete(response);
+                return;
+            }
+
+            if (error == null) {
+                fallbackResponse.compareAndSet(null, response);
+            } else {
+                fallbackError.compareAndSet(null, error);
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                // Neither succeeded, so prefer a response over an error
+                if (fallbackResponse.get() != null) {
+                    result.complete(fallbackResponse.get());
+                } else {
+                    result.completeExceptionally(fallbackError.get());
+                }
+            }
+        };
+        first.whenComplete(completion);
+        second.whenComplete(completion);
+        return result;
+    }
+}
@@ -13,6 +13,8 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
+import java.time.Duration;
+
 /**
  * The SACClient interface provides a way to interact with the
  * ServiceAuthCentral API.
@@ -28,4 +30,31 @@ public interface SACClient {
      * @return the token response
      */
     TokenResponse getToken(TokenRequest request);
+
+    /**
+     * Get a token from the ServiceAuthCentral, giving up once the timeout passes.
+     * 
+     * The timeout is the total budget for the call, including waiting for a
+     * cache lock, rate limits and the request itself. The default implementation
+     * ignores the timeout for clients that do not support deadlines.
+     * 
+     * @param request the token request
+     * @param timeout the maximum time to wait for the token
+     * @return the token response
+     * @throws SACTimeoutException if the timeout passed before a token was
+     *                             retrieved
+     */
+    default TokenResponse getToken(TokenRequest request, Duration timeout) {
+        return this.getToken(request);
+    }
+
+    /**
+     * Prepare the client so the first token request does not pay the setup cost,
+     * such as connecting to ServiceAuthCentral and initializing the credentials.
+     * 
+     * This blocks until the client is warm and can be used as a readiness gate.
+     * The default implementation does nothing.
+     */
+    default void warmUp() {
+    }
 }
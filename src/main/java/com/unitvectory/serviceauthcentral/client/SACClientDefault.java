@@ -18,12 +18,12 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import java.util.Set;
 
 import lombok.Builder;
 import lombok.NonNull;
@@ -47,9 +47,24 @@ public class SACClientDefault implements SACClient {
     private static final String DEFAULT_USER_AGENT = "serviceauthcentral-client-java";
 
     /**
-     * The http client
+     * The default statuses of the errors that are cached
+     */
+    private static final Set<Integer> DEFAULT_CACHED_ERROR_STATUSES = Set.of(400, 401, 403);
+
+    /**
+     * The default time before a failed endpoint is probed again
      */
-    private final HttpClient httpClient;
+    private static final Duration DEFAULT_ENDPOINT_RETRY_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * The default timeout for each token request
+     */
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The http client, created on first use with lazy initialization
+     */
+    private final Lazy<HttpClient> httpClient;
 
     /**
      * The issuer
@@ -57,11 +72,16 @@ public class SACClientDefault implements SACClient {
     private final String issuer;
 
     /**
-     * The complete url for the token endpoint.
+     * The token endpoints in priority order.
      * 
-     * If this is not provided the issuer is used suffixed with "/v1/token"
+     * If no endpoints are provided the issuer is used suffixed with "/v1/token"
+     */
+    private final TokenEndpointSelector endpoints;
+
+    /**
+     * True once the client has been warmed up.
      */
-    private final String tokenEndpoint;
+    private volatile boolean warm;
 
     /**
      * The credentials provider used to authenticate to ServiceAuthCentral.
@@ -76,94 +96,308 @@ public class SACClientDefault implements SACClient {
      */
     private final String userAgent;
 
+    /**
+     * The policy whose minimum remaining lifetime decides if the credentials can
+     * be used.
+     */
+    private final TokenRefreshPolicy refreshPolicy;
+
+    /**
+     * The cache of errors that will not succeed if retried.
+     */
+    private final TokenErrorCache errorCache;
+
+    /**
+     * The encoder for request bodies, which reuses the pre-encoded fragments.
+     */
+    private final TokenRequestBody requestBody = new TokenRequestBody();
+
+    /**
+     * Create a new SACClientDefault.
+     * 
+     * @param httpClient            the http client; defaults to a client with a 10
+     *                              second connect timeout
+     * @param issuer                the issuer
+     * @param tokenEndpoint         the token endpoint; defaults to the issuer
+     *                              suffixed with "/v1/token"
+     * @param tokenEndpoints        the token endpoints in priority order, such as
+     *                              one per region; requests go to the healthiest
+     *                              and fastest and fail over to the others,
+     *                              overrides the token endpoint when set
+     * @param credentialsProvider   the credentials provider
+     * @param userAgent             the user agent
+     * @param limits                the limits on the token requests for each
+     *                              endpoint; defaults to no limits
+     * @param refreshPolicy         the policy deciding if the credentials can be
+     *                              used
+     * @param errorCacheTtl         how long errors that will not succeed if retried
+     *                              are cached; defaults to not caching errors
+     * @param cachedErrorStatuses   the statuses of the errors that are cached;
+     *                              defaults to 400, 401 and 403
+     * @param hedging               the policy for hedging slow token requests;
+     *                              defaults to not hedging
+     * @param endpointRetryInterval the time before a failed endpoint is probed
+     *                              again; defaults to 30 seconds
+     * @param requestTimeout        the timeout for each token request; defaults to
+     *                              30 seconds
+     * @param httpVersion           the HTTP version for the token requests;
+     *                              defaults to the version of the http client
+     * @param expectContinue        true to send the Expect: 100-continue header;
+     *                              defaults to false
+     * @param lazyInit              true to defer creating the default http client
+     *                              until first use or warmUp; defaults to false
+     */
     @Builder
     private SACClientDefault(HttpClient httpClient,
             @NonNull String issuer,
             String tokenEndpoint,
+            List<String> tokenEndpoints,
             @NonNull CredentialsProvider credentialsProvider,
-            String userAgent) {
+            String userAgent,
+            TokenRequestLimits limits,
+            TokenRefreshPolicy refreshPolicy,
+            Duration errorCacheTtl,
+            Set<Integer> cachedErrorStatuses,
+            HedgingPolicy hedging,
+            Duration endpointRetryInterval,
+            Duration requestTimeout,
+            HttpClient.Version httpVersion,
+            Boolean expectContinue,
+            Boolean lazyInit) {
 
         if (httpClient == null) {
-            this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+            this.httpClient = Lazy.of(() -> HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build(),
+                    lazyInit != null && lazyInit);
         } else {
-            this.httpClient = httpClient;
+            this.httpClient = Lazy.value(httpClient);
         }
 
         this.issuer = issuer;
 
-        if (tokenEndpoint == null) {
-            this.tokenEndpoint = this.issuer + TOKEN_PATH;
-        } else {
-            this.tokenEndpoint = tokenEndpoint;
-        }
-
         this.credentialsProvider = credentialsProvider;
         if (userAgent == null) {
             this.userAgent = DEFAULT_USER_AGENT;
         } else {
             this.userAgent = userAgent;
         }
+
+        if (refreshPolicy == null) {
+            this.refreshPolicy = TokenRefreshPolicy.DEFAULT;
+        } else {
+            this.refreshPolicy = refreshPolicy;
+        }
+
+        this.errorCache = new TokenErrorCache(errorCacheTtl == null ? Duration.ZERO : errorCacheTtl,
+                cachedErrorStatuses == null ? DEFAULT_CACHED_ERROR_STATUSES : cachedErrorStatuses);
+
+        List<String> endpointUrls;
+        if (tokenEndpoints != null && !tokenEndpoints.isEmpty()) {
+            endpointUrls = tokenEndpoints;
+        } else if (tokenEndpoint != null) {
+            endpointUrls = List.of(tokenEndpoint);
+        } else {
+            endpointUrls = List.of(this.issuer + TOKEN_PATH);
+        }
+
+        // Each endpoint has its own limits and latency history
+        List<TokenEndpoint> endpointList = new ArrayList<>(endpointUrls.size());
+        for (String url : endpointUrls) {
+            // The fixed parts of each request are built once and reused
+            HttpRequest.Builder template = HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .header("User-Agent", this.userAgent)
+                    .expectContinue(expectContinue != null && expectContinue)
+                    .POST(HttpRequest.BodyPublishers.noBody());
+            template.timeout(requestTimeout == null ? DEFAULT_REQUEST_TIMEOUT : requestTimeout);
+            if (httpVersion != null) {
+                template.version(httpVersion);
+            }
+
+            endpointList.add(new TokenEndpoint(template.build(),
+                    new TokenRequestLimiter(limits == null ? TokenRequestLimits.builder().build() : limits),
+                    hedging == null ? null : new RequestHedger(hedging)));
+        }
+
+        this.endpoints = new TokenEndpointSelector(endpointList,
+                endpointRetryInterval == null ? DEFAULT_ENDPOINT_RETRY_INTERVAL : endpointRetryInterval);
+    }
+
+    /**
+     * Warm up the client by initializing the credentials and http client and
+     * connecting to the token endpoints so the first token request does not pay
+     * for DNS, TCP and TLS setup.
+     * 
+     * @throws SACException if no token endpoint could be reached
+     */
+    @Override
+    public void warmUp() {
+        this.credentialsProvider.warmUp();
+        SACCredentials credentials = this.credentialsProvider.getCredentials();
+        if (!this.refreshPolicy.isUsable(credentials)) {
+            throw new SACException("Credentials are expired");
+        }
+
+        try {
+            if (this.endpoints.warmUp(this.httpClient.get()) == 0) {
+                throw new SACException("Failed to connect to any token endpoint");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted warming up client", e);
+        }
+
+        this.warm = true;
+    }
+
+    /**
+     * Checks if the client has been warmed up.
+     * 
+     * @return true once warmUp has completed successfully
+     */
+    public boolean isWarm() {
+        return this.warm;
     }
 
     @Override
     public TokenResponse getToken(@NonNull TokenRequest request) {
+        return this.getToken(request, Deadline.NONE);
+    }
 
-        Map<String, String> params = new HashMap<>();
-        if (request.getAudience() != null) {
-            params.put("audience", request.getAudience());
-        } else {
+    @Override
+    public TokenResponse getToken(@NonNull TokenRequest request, @NonNull Duration timeout) {
+        return this.getToken(request, Deadline.after(timeout));
+    }
+
+    private TokenResponse getToken(TokenRequest request, Deadline deadline) {
+
+        if (request.getAudience() == null) {
             // ServiceAuthCentral is an authorization server, so it must have an audience
             throw new SACException("Audience is required");
         }
 
-        if (request.getScopes() != null && request.getScopes().size() > 0) {
-            // Scopes are optional
-            params.put("scope", String.join(" ", request.getScopes()));
-        }
+        // Fail fast if the same request recently failed with an error that will not
+        // succeed if retried
+        this.errorCache.check(request);
 
         SACCredentials credentials = this.credentialsProvider.getCredentials();
-        if (credentials.isExpired(30)) {
+        if (!this.refreshPolicy.isUsable(credentials)) {
             throw new SACException("Credentials are expired");
         }
 
-        params.putAll(credentials.credentialsMap());
+        byte[] body = this.requestBody.encode(request, credentials);
 
-        return this.getToken(params);
+        try {
+            return this.getToken(request, body, deadline);
+        } catch (SACClientException e) {
+            this.errorCache.put(request, e);
+            throw e;
+        }
     }
 
-    private TokenResponse getToken(Map<String, String> params) {
-        HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(this.tokenEndpoint))
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .header("User-Agent", this.userAgent)
-                .POST(HttpRequest.BodyPublishers.ofString(UrlFormEncoder.encodeFormParams(params)))
-                .build();
+    private TokenResponse getToken(TokenRequest request, byte[] body, Deadline deadline) {
+        HttpClient client = this.httpClient.get();
 
-        try {
-            HttpResponse<String> response = this.httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+        // Try the endpoints in order, failing over when one is unavailable
+        SACException failure = null;
+        for (TokenEndpoint endpoint : this.endpoints.select(client)) {
+            deadline.check();
 
-            // If the response isn't 200 then return an error
-            if (response.statusCode() != 200) {
-                throw new SACClientException(JsonParser.parseString(response.body())
-                        .getAsJsonObject());
+            // The event includes the time waiting for the limiter
+            TokenFetchEvent event = JfrEvents.AVAILABLE ? new TokenFetchEvent() : null;
+            if (event != null) {
+                event.begin();
             }
+            int status = -1;
+            try (TokenRequestLimiter.Permit permit = endpoint.getLimiter().acquire(deadline)) {
+                // The request timeout is what remains after waiting for the permit
+                HttpRequest httpRequest = endpoint.request(body, deadline);
+                long start = System.nanoTime();
+
+                HttpResponse<String> response;
+                if (endpoint.getHedger() == null) {
+                    response = client.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+                } else {
+                    response = endpoint.getHedger().send(client, httpRequest,
+                            HttpResponse.BodyHandlers.ofString(), endpoint.getLimiter());
+                }
+                status = response.statusCode();
+
+                if (isUnavailable(response.statusCode())) {
+                    // The endpoint is unavailable, try the next one
+                    this.endpoints.recordFailure(endpoint);
+                    failure = errorResponse(response);
+                    continue;
+                }
 
-            JsonObject responseJson = JsonParser.parseString(response.body()).getAsJsonObject();
+                endpoint.recordSuccess(System.nanoTime() - start);
 
-            // Validate the expected fields exist
-            if (!responseJson.has("access_token") || !responseJson.has("expires_in")
-                    || !responseJson.has("token_type")) {
-                throw new SACException("Unexpected token response format.");
+                // If the response isn't 200 then return an error
+                if (response.statusCode() != 200) {
+                    throw errorResponse(response);
+                }
+
+                return parseResponse(response);
+            } catch (HttpTimeoutException e) {
+                // The endpoint is too slow, try the next one if there is time left
+                this.endpoints.recordFailure(endpoint);
+                if (deadline.isExpired()) {
+                    throw new SACTimeoutException("Timed out getting token", e);
+                }
+                failure = new SACException("Failed to get token", e);
+            } catch (IOException e) {
+                // The endpoint could not be reached, try the next one
+                this.endpoints.recordFailure(endpoint);
+                failure = new SACException("Failed to get token", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted getting token", e);
+            } finally {
+                if (event != null && event.shouldCommit()) {
+                    event.status = status;
+                    event.endpoint = endpoint.getUri().toString();
+                    event.audience = request.getAudience();
+                    event.commit();
+                }
             }
+        }
+
+        throw failure;
+    }
+
+    /**
+     * Checks if the status code means the endpoint could not handle the request,
+     * so it can be tried elsewhere.
+     * 
+     * @param statusCode the HTTP status code
+     * @return true if the endpoint is unavailable
+     */
+    static boolean isUnavailable(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
 
-            return TokenResponse.builder()
-                    .accessToken(responseJson.get("access_token").getAsString())
-                    .expiresIn(responseJson.get("expires_in").getAsLong())
-                    .tokenType(responseJson.get("token_type").getAsString())
-                    .build();
-        } catch (IOException | InterruptedException e) {
-            throw new SACException("Failed to get token", e);
+    private static SACException errorResponse(HttpResponse<String> response) {
+        try {
+            return new SACClientException(JsonReader.parseObject(response.body()));
+        } catch (RuntimeException e) {
+            // Not an error from ServiceAuthCentral, such as from a load balancer
+            return new SACException("Failed to get token, status " + response.statusCode(), e);
         }
     }
 
+    private static TokenResponse parseResponse(HttpResponse<String> response) {
+        Map<String, Object> responseJson = JsonReader.parseObject(response.body());
+
+        // Validate the expected fields exist
+        if (!responseJson.containsKey("access_token") || !responseJson.containsKey("expires_in")
+                || !responseJson.containsKey("token_type")) {
+            throw new SACException("Unexpected token response format.");
+        }
+
+        return TokenResponse.builder()
+                .accessToken(JsonReader.getString(responseJson, "access_token"))
+                .expiresIn(JsonReader.getLong(responseJson, "expires_in"))
+                .tokenType(JsonReader.getString(responseJson, "token_type"))
+                .build();
+    }
+
 }
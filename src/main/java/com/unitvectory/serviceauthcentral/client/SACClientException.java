@@ -13,12 +13,8 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.util.Map;
 
 import lombok.Getter;
 
@@ -36,14 +32,37 @@ public class SACClientException extends SACException {
 
     private final int status;
 
-    SACClientException(JsonObject json) {
+    SACClientException(Map<String, Object> json) {
+        super("Client failed to get token.");
+
+        this.error = JsonReader.getString(json, "error");
+        this.messages = JsonReader.getStringList(json, "messages");
+        this.status = (int) JsonReader.getLong(json, "status");
+    }
+
+    SACClientException(String error, List<String> messages, int status) {
         super("Client failed to get token.");
 
-        this.error = json.get("error").getAsString();
-        this.messages = Arrays.asList(json.get("messages").getAsJsonArray())
-            .stream()
-            .map(JsonElement::getAsString)
-            .collect(Collectors.toList());
-        this.status = json.get("status").getAsInt();
+        this.error = error;
+        this.messages = messages;
+        this.status = status;
+    }
+
+    private SACClientException(SACClientException exception) {
+        super("Client failed to get token.", null, false, false);
+
+        this.error = exception.error;
+        this.messages = exception.messages;
+        this.status = exception.status;
+    }
+
+    /**
+     * Create a copy of this exception without a stack trace that is cheap to
+     * throw repeatedly.
+     * 
+     * @return the copy of the exception
+     */
+    SACClientException withoutStackTrace() {
+        return new SACClientException(this);
     }
 }
\ No newline at end of file
@@ -23,4 +23,16 @@ import lombok.experimental.StandardException;
 @StandardException
 public class SACException extends RuntimeException {
 
+    /**
+     * Create a new exception controlling suppression and the stack trace.
+     * 
+     * @param message            the message
+     * @param cause              the cause
+     * @param enableSuppression  whether suppression is enabled
+     * @param writableStackTrace whether the stack trace is writable; false for
+     *                           cheap exceptions that are thrown repeatedly
+     */
+    protected SACException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
 }
@@ -13,32 +13,14 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
+import lombok.experimental.StandardException;
+
 /**
- * The DefaultGson class provides a default Gson instance.
+ * The SACKeySetUnavailableException class is the exception thrown when the
+ * issuer's public keys could not be loaded to verify a token.
  * 
  * @author Jared Hatfield (UnitVectorY Labs)
  */
-import com.google.gson.Gson;
-
-import lombok.experimental.UtilityClass;
-
-/**
- * The DefaultGson class provides a default Gson instance.
- */
-@UtilityClass
-class DefaultGson {
-
-    /**
-     * The default Gson instance
-     */
-    private static final Gson gson = new Gson();
-
-    /**
-     * Gets the default Gson instance.
-     * 
-     * @return the default Gson instance
-     */
-    static Gson getInstance() {
-        return gson;
-    }
+@StandardException
+public class SACKeySetUnavailableException extends SACException {
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The SACTokenBroker class serves tokens to local processes over a Unix domain
+ * socket.
+ * 
+ * The broker holds the credentials and a CachingSACClientDecorator so that
+ * short lived processes and sidecars on the same host can use the
+ * BrokerSACClient to get a cached token without holding keys or calling
+ * ServiceAuthCentral themselves.
+ * 
+ * The socket is created in a private directory and restricted to the owner
+ * where supported before it is moved to the socket path, any process able to
+ * connect to the socket can get tokens.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class SACTokenBroker implements AutoCloseable {
+
+    /**
+     * The client used to get the tokens.
+     */
+    private final SACClient client;
+
+    /**
+     * The path to the socket file.
+     */
+    private final Path socketPath;
+
+    /**
+     * The executor handling the connections.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The server socket, set once started.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Create a new token broker.
+     * 
+     * @param client     the client used to get tokens; wrapped in a
+     *                   CachingSACClientDecorator if not already caching
+     * @param socketPath the path to the socket file to listen on
+     */
+    @Builder
+    private SACTokenBroker(@NonNull SACClient client, @NonNull Path socketPath) {
+        if (client instanceof CachingSACClientDecorator) {
+            this.client = client;
+        } else {
+            this.client = CachingSACClientDecorator.builder().client(client).build();
+        }
+
+        this.socketPath = socketPath;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "sac-token-broker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start listening for connections on the socket.
+     */
+    public synchronized void start() {
+        if (this.serverChannel != null) {
+            throw new SACException("Broker already started");
+        }
+
+        try {
+            // Remove the socket file left behind by a previous broker
+            Files.deleteIfExists(this.socketPath);
+
+            // Bind inside a directory only the owner can enter and restrict the socket
+            // before moving it into place, so it is never reachable by others
+            Path privateDirectory = createPrivateDirectory(this.socketPath.toAbsolutePath().getParent());
+            ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                Path boundPath = privateDirectory.resolve("s");
+                channel.bind(UnixDomainSocketAddress.of(boundPath));
+
+                try {
+                    Files.setPosixFilePermissions(boundPath, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system, rely on the directory permissions
+                }
+
+                Files.move(boundPath, this.socketPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            } finally {
+                Files.deleteIfExists(privateDirectory.resolve("s"));
+                Files.deleteIfExists(privateDirectory);
+            }
+
+            this.serverChannel = channel;
+        } catch (IOException e) {
+            throw new SACException("Failed to start token broker", e);
+        }
+
+        this.executor.execute(this::acceptConnections);
+    }
+
+    /**
+     * Stop listening and remove the socket file.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (this.serverChannel != null) {
+                this.serverChannel.close();
+            }
+            Files.deleteIfExists(this.socketPath);
+        } catch (IOException e) {
+            throw new SACException("Failed to stop token broker", e);
+        } finally {
+            this.executor.shutdownNow();
+        }
+    }
+
+    private static Path createPrivateDirectory(Path parent) throws IOException {
+        // A short name as socket paths are limited to around 100 characters
+        try {
+            return Files.createTempDirectory(parent, ".sac",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            return Files.createTempDirectory(parent, ".sac");
+        }
+    }
+
+    private void acceptConnections() {
+        while (this.serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = this.serverChannel.accept();
+                this.executor.execute(() -> this.handleConnection(channel));
+            } catch (ClosedChannelException e) {
+                // The broker was closed
+                return;
+            } catch (IOException e) {
+                // Failed to accept a single connection, keep serving the rest
+            }
+        }
+    }
+
+    private void handleConnection(SocketChannel channel) {
+        try (channel;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            // A connection may be reused for multiple requests
+            while (true) {
+                TokenRequest request;
+                try {
+                    request = BrokerProtocol.readRequest(in);
+                } catch (EOFException e) {
+                    return;
+                }
+
+                TokenResponse response;
+                try {
+                    response = this.client.getToken(request);
+                } catch (SACException e) {
+                    BrokerProtocol.writeError(out, e);
+                    continue;
+                } catch (RuntimeException e) {
+                    BrokerProtocol.writeError(out, new SACException("Broker failed to get token", e));
+                    continue;
+                }
+
+                BrokerProtocol.writeResponse(out, response);
+            }
+        } catch (IOException e) {
+            // The connection was closed or sent an invalid request
+        }
+    }
+}
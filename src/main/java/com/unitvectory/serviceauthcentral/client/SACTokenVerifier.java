@@ -0,0 +1,362 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The SACTokenVerifier class verifies the tokens issued by ServiceAuthCentral
+ * for services receiving requests.
+ * 
+ * The signature is verified with the issuer's public keys, which are fetched
+ * from the JWKS on first use and cached by key id. The keys are refreshed in
+ * the background once they are older than the key refresh interval, and a token
+ * signed with an unknown key id causes a rate-limited refetch so key rotation
+ * is picked up immediately. The token must be signed with RS256, not be
+ * expired, and have the expected issuer and audience. Failing to load the keys
+ * is reported separately from an invalid token as it is not the caller's fault.
+ * 
+ * The header and claims are read field by field without building a JSON tree.
+ * Verified tokens are cached by their digest until they expire, so a repeated
+ * token is not verified again; a token signed with a key that is later removed
+ * from the JWKS remains valid until it expires. Instances are thread safe and
+ * should be shared.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public class SACTokenVerifier {
+
+    /**
+     * The path of the JWKS relative to the issuer
+     */
+    private static final String JWKS_PATH = "/.well-known/jwks.json";
+
+    /**
+     * The default interval after which the keys are refreshed in the background
+     */
+    private static final Duration DEFAULT_KEY_REFRESH_INTERVAL = Duration.ofHours(1);
+
+    /**
+     * The default minimum interval between fetches of the JWKS
+     */
+    private static final Duration DEFAULT_MIN_REFETCH_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * The default allowed clock skew
+     */
+    private static final Duration DEFAULT_CLOCK_SKEW = Duration.ofSeconds(30);
+
+    /**
+     * The default maximum number of verified tokens cached
+     */
+    private static final int DEFAULT_VERIFIED_CACHE_SIZE = 10000;
+
+    /**
+     * The timeout for fetching the JWKS
+     */
+    private static final Duration JWKS_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The signature instances, which are not thread safe, reused per thread.
+     */
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA256withRSA");
+        } catch (GeneralSecurityException e) {
+            throw new SACException("RS256 is not supported", e);
+        }
+    });
+
+    private final String issuer;
+
+    private final String audience;
+
+    private final long clockSkewSeconds;
+
+    private final JwksKeyCache keys;
+
+    /**
+     * The cache of verified tokens; null if disabled.
+     */
+    private final VerifiedTokenCache verifiedCache;
+
+    /**
+     * Create a new SACTokenVerifier.
+     * 
+     * @param issuer             the expected issuer
+     * @param audience           the expected audience, the service receiving the
+     *                           requests
+     * @param jwksUri            the JWKS uri; defaults to the issuer suffixed with
+     *                           "/.well-known/jwks.json"
+     * @param jwksFile           a local JWKS file to use instead of fetching the
+     *                           JWKS, such as for testing
+     * @param httpClient         the http client for fetching the JWKS; defaults to
+     *                           a client with a 10 second connect timeout
+     * @param keyRefreshInterval the age after which the keys are refreshed in the
+     *                           background; defaults to 1 hour
+     * @param minRefetchInterval the minimum time between fetches of the JWKS;
+     *                           defaults to 30 seconds
+     * @param clockSkew          the allowed clock skew when checking expiration;
+     *                           defaults to 30 seconds
+     * @param refreshExecutor    the executor for background refreshes; defaults to
+     *                           the common pool
+     * @param verifiedCacheSize  the maximum number of verified tokens cached; 0
+     *                           disables the cache; defaults to 10000
+     */
+    @Builder
+    private SACTokenVerifier(@NonNull String issuer,
+            @NonNull String audience,
+            String jwksUri,
+            Path jwksFile,
+            HttpClient httpClient,
+            Duration keyRefreshInterval,
+            Duration minRefetchInterval,
+            Duration clockSkew,
+            Executor refreshExecutor,
+            Integer verifiedCacheSize) {
+        this.issuer = issuer;
+        this.audience = audience;
+        this.clockSkewSeconds = (clockSkew == null ? DEFAULT_CLOCK_SKEW : clockSkew).getSeconds();
+
+        Supplier<String> source;
+        if (jwksFile != null) {
+            source = () -> readFile(jwksFile);
+        } else {
+            URI uri = URI.create(jwksUri == null ? issuer + JWKS_PATH : jwksUri);
+            HttpClient client = httpClient == null
+                    ? HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build()
+                    : httpClient;
+            source = () -> fetch(client, uri);
+        }
+
+        this.keys = new JwksKeyCache(source,
+                (keyRefreshInterval == null ? DEFAULT_KEY_REFRESH_INTERVAL : keyRefreshInterval).toNanos(),
+                (minRefetchInterval == null ? DEFAULT_MIN_REFETCH_INTERVAL : minRefetchInterval).toNanos(),
+                refreshExecutor == null ? ForkJoinPool.commonPool() : refreshExecutor);
+
+        int cacheSize = verifiedCacheSize == null ? DEFAULT_VERIFIED_CACHE_SIZE : verifiedCacheSize;
+        this.verifiedCache = cacheSize > 0 ? new VerifiedTokenCache(cacheSize, this.clockSkewSeconds) : null;
+    }
+
+    /**
+     * Verify the token.
+     * 
+     * @param token the JWT, without the "Bearer " prefix
+     * @return the verified token
+     * @throws SACTokenVerificationException if the token is not valid
+     * @throws SACKeySetUnavailableException  if the issuer's keys could not be
+     *                                        loaded, so the token could not be
+     *                                        verified either way
+     */
+    public VerifiedToken verify(@NonNull String token) {
+        if (this.verifiedCache == null) {
+            return this.verifySignature(token);
+        }
+
+        ByteBuffer key = VerifiedTokenCache.key(token);
+        VerifiedToken verified = this.verifiedCache.get(key);
+        if (verified == null) {
+            verified = this.verifySignature(token);
+            this.verifiedCache.put(key, verified);
+        }
+
+        return verified;
+    }
+
+    private VerifiedToken verifySignature(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            throw new SACTokenVerificationException("Malformed token");
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            String header = new String(decoder.decode(token.substring(0, firstDot)), StandardCharsets.UTF_8);
+            String payload = new String(decoder.decode(token.substring(firstDot + 1, secondDot)),
+                    StandardCharsets.UTF_8);
+            byte[] signature = decoder.decode(token.substring(secondDot + 1));
+
+            // Check the signature before trusting anything in the claims
+            String keyId = this.readKeyId(header);
+            PublicKey key = this.keys.getKey(keyId);
+            Signature verifier = SIGNATURE.get();
+            verifier.initVerify(key);
+            verifier.update(token.substring(0, secondDot).getBytes(StandardCharsets.US_ASCII));
+            if (!verifier.verify(signature)) {
+                throw new SACTokenVerificationException("Invalid signature");
+            }
+
+            return this.readClaims(payload, keyId);
+        } catch (SACTokenVerificationException | SACKeySetUnavailableException e) {
+            throw e;
+        } catch (IllegalArgumentException | GeneralSecurityException | SACException e) {
+            throw new SACTokenVerificationException("Malformed token", e);
+        }
+    }
+
+    private String readKeyId(String header) {
+        String alg = null;
+        String kid = null;
+
+        JsonReader reader = new JsonReader(header);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("alg")) {
+                alg = reader.nextString();
+            } else if (name.equals("kid")) {
+                kid = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        reader.end();
+
+        if (!"RS256".equals(alg)) {
+            throw new SACTokenVerificationException("Unsupported algorithm");
+        }
+        if (kid == null) {
+            throw new SACTokenVerificationException("Missing key id");
+        }
+
+        return kid;
+    }
+
+    private VerifiedToken readClaims(String payload, String keyId) {
+        String iss = null;
+        String sub = null;
+        List<String> aud = new ArrayList<>();
+        Set<String> scopes = Collections.emptySet();
+        Long iat = null;
+        Long nbf = null;
+        Long exp = null;
+
+        JsonReader reader = new JsonReader(payload);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "iss":
+                    iss = reader.nextString();
+                    break;
+                case "sub":
+                    sub = reader.nextString();
+                    break;
+                case "aud":
+                    // The audience is either a single string or an array of strings
+                    if (reader.isArrayNext()) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            aud.add(reader.nextString());
+                        }
+                        reader.endArray();
+                    } else {
+                        aud.add(reader.nextString());
+                    }
+                    break;
+                case "scope":
+                    scopes = new LinkedHashSet<>(List.of(reader.nextString().trim().split("\\s+")));
+                    scopes.remove("");
+                    break;
+                case "iat":
+                    iat = reader.nextLong();
+                    break;
+                case "nbf":
+                    nbf = reader.nextLong();
+                    break;
+                case "exp":
+                    exp = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        reader.end();
+
+        long now = Instant.now().getEpochSecond();
+        if (exp == null || now - this.clockSkewSeconds >= exp) {
+            throw new SACTokenVerificationException("Token is expired");
+        }
+        if (nbf != null && now + this.clockSkewSeconds < nbf) {
+            throw new SACTokenVerificationException("Token is not yet valid");
+        }
+        if (!this.issuer.equals(iss)) {
+            throw new SACTokenVerificationException("Invalid issuer");
+        }
+        if (!aud.contains(this.audience)) {
+            throw new SACTokenVerificationException("Invalid audience");
+        }
+
+        return VerifiedToken.builder()
+                .subject(sub)
+                .issuer(iss)
+                .audiences(Collections.unmodifiableList(aud))
+                .scopes(Collections.unmodifiableSet(scopes))
+                .issuedAt(iat == null ? null : Instant.ofEpochSecond(iat))
+                .expiration(Instant.ofEpochSecond(exp))
+                .keyId(keyId)
+                .build();
+    }
+
+    private static String readFile(Path jwksFile) {
+        try {
+            return Files.readString(jwksFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SACException("Failed to read JWKS file", e);
+        }
+    }
+
+    private static String fetch(HttpClient httpClient, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(JWKS_TIMEOUT).GET().build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new SACException("Failed to fetch JWKS, status " + response.statusCode());
+            }
+            return response.body();
+        } catch (IOException e) {
+            throw new SACException("Failed to fetch JWKS", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted fetching JWKS", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The TokenCacheEvent class is the JFR event recorded for each token lookup in
+ * the CachingSACClientDecorator.
+ * 
+ * Disabled by default, enable serviceauthcentral.TokenCache in the recording
+ * settings.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Name("serviceauthcentral.TokenCache")
+@Label("Token Cache")
+@Description("Token lookup in the caching client")
+@Category("ServiceAuthCentral")
+@Enabled(false)
+@StackTrace(false)
+class TokenCacheEvent extends Event {
+
+    static final String HIT = "hit";
+
+    static final String MISS = "miss";
+
+    static final String STALE = "stale";
+
+    @Label("Audience")
+    String audience;
+
+    @Label("Result")
+    @Description("hit, miss or stale")
+    String result;
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The TokenEndpoint class tracks the state of a single ServiceAuthCentral
+ * token endpoint: its limiter and hedger, and an exponentially weighted moving
+ * average of its latency and error rate used to select between endpoints.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenEndpoint {
+
+    /**
+     * The weight given to the newest sample in the moving averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * The shortest timeout given to a request.
+     */
+    private static final long MIN_TIMEOUT_NANOS = Duration.ofMillis(1).toNanos();
+
+    /**
+     * The endpoint uri.
+     */
+    @Getter
+    private final URI uri;
+
+    /**
+     * The immutable request with the fixed uri, headers and settings that each
+     * token request is built from.
+     */
+    private final HttpRequest requestTemplate;
+
+    /**
+     * The limiter for the requests sent to this endpoint.
+     */
+    @Getter
+    private final TokenRequestLimiter limiter;
+
+    /**
+     * The hedger for slow requests to this endpoint; null if hedging is disabled.
+     */
+    @Getter
+    private final RequestHedger hedger;
+
+    /**
+     * The average latency in nanoseconds; negative until measured.
+     */
+    private double latency = -1;
+
+    /**
+     * The average error rate between 0 and 1.
+     */
+    private double errorRate;
+
+    /**
+     * The time until which the endpoint is considered unhealthy.
+     */
+    private long unhealthyUntil;
+
+    /**
+     * True while the endpoint is unhealthy.
+     */
+    private boolean unhealthy;
+
+    /**
+     * True while a probe of the endpoint is in progress.
+     */
+    private boolean probing;
+
+    TokenEndpoint(@NonNull URI uri, @NonNull TokenRequestLimiter limiter, RequestHedger hedger) {
+        this(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build(), limiter, hedger);
+    }
+
+    TokenEndpoint(@NonNull HttpRequest requestTemplate, @NonNull TokenRequestLimiter limiter,
+            RequestHedger hedger) {
+        this.uri = requestTemplate.uri();
+        this.requestTemplate = requestTemplate;
+        this.limiter = limiter;
+        this.hedger = hedger;
+    }
+
+    /**
+     * Create the token request for this endpoint from the template.
+     * 
+     * @param body     the encoded form body
+     * @param deadline the deadline, which shortens the request timeout when
+     *                 less time remains
+     * @return the request
+     */
+    HttpRequest request(byte[] body, Deadline deadline) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(this.requestTemplate, (name, value) -> true)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+
+        if (deadline.isBounded()) {
+            long timeout = this.requestTemplate.timeout().map(Duration::toNanos).orElse(Long.MAX_VALUE);
+            builder.timeout(Duration.ofNanos(Math.max(MIN_TIMEOUT_NANOS, deadline.remainingNanos(timeout))));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Create the request probing this endpoint from the template, keeping the
+     * user agent so probes are attributed to the client.
+     * 
+     * @param timeout the probe timeout
+     * @return the request
+     */
+    HttpRequest probeRequest(Duration timeout) {
+        return HttpRequest.newBuilder(this.requestTemplate, (name, value) -> name.equalsIgnoreCase("User-Agent"))
+                .GET()
+                .timeout(timeout)
+                .build();
+    }
+
+    /**
+     * Record a successful request.
+     * 
+     * @param nanos the latency in nanoseconds
+     */
+    synchronized void recordSuccess(long nanos) {
+        this.recordLatency(nanos);
+        this.errorRate = (1 - ALPHA) * this.errorRate;
+        this.unhealthy = false;
+    }
+
+    /**
+     * Record a failed request, marking the endpoint unhealthy until the retry
+     * interval passes.
+     * 
+     * @param retryIntervalNanos the time before the endpoint is probed again
+     */
+    synchronized void recordFailure(long retryIntervalNanos) {
+        this.errorRate = (1 - ALPHA) * this.errorRate + ALPHA;
+        this.unhealthy = true;
+        this.unhealthyUntil = System.nanoTime() + retryIntervalNanos;
+    }
+
+    /**
+     * Record the latency of a probe without affecting the error rate.
+     * 
+     * @param nanos the latency in nanoseconds
+     */
+    synchronized void recordLatency(long nanos) {
+        if (this.latency < 0) {
+            this.latency = nanos;
+        } else {
+            this.latency = (1 - ALPHA) * this.latency + ALPHA * nanos;
+        }
+    }
+
+    synchronized boolean isHealthy() {
+        return !this.unhealthy;
+    }
+
+    synchronized boolean isMeasured() {
+        return this.latency >= 0;
+    }
+
+    /**
+     * Start a probe if the endpoint needs one and none is in progress: either it
+     * has never been measured or it is unhealthy and the retry interval passed.
+     * 
+     * @return true if the caller should probe the endpoint
+     */
+    synchronized boolean tryStartProbe() {
+        if (this.probing) {
+            return false;
+        }
+
+        boolean needsProbe = this.latency < 0 || (this.unhealthy && System.nanoTime() - this.unhealthyUntil >= 0);
+        if (needsProbe) {
+            this.probing = true;
+        }
+        return needsProbe;
+    }
+
+    synchronized void endProbe() {
+        this.probing = false;
+    }
+
+    /**
+     * Get the score used to order the endpoints, lower is better.
+     * 
+     * @return the latency penalized by the error rate; infinite if unmeasured
+     */
+    synchronized double score() {
+        if (this.latency < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return this.latency * (1 + 10 * this.errorRate);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import lombok.NonNull;
+
+/**
+ * The TokenEndpointSelector class orders the token endpoints so requests go to
+ * the healthiest and fastest endpoint first and fail over to the others.
+ * 
+ * Unhealthy endpoints are probed again in the background once the retry
+ * interval passes, and endpoints that have never been used are probed to learn
+ * their latency.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenEndpointSelector {
+
+    /**
+     * The timeout for a probe request.
+     */
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final List<TokenEndpoint> endpoints;
+
+    private final long retryIntervalNanos;
+
+    TokenEndpointSelector(@NonNull List<TokenEndpoint> endpoints, @NonNull Duration retryInterval) {
+        if (endpoints.isEmpty()) {
+            throw new SACException("At least one token endpoint is required");
+        }
+
+        this.endpoints = List.copyOf(endpoints);
+        this.retryIntervalNanos = retryInterval.toNanos();
+    }
+
+    /**
+     * Get the endpoints in the order they should be tried.
+     * 
+     * @param httpClient the http client used to probe endpoints
+     * @return the healthy endpoints ordered by score followed by the unhealthy
+     *         endpoints as a last resort
+     */
+    List<TokenEndpoint> select(HttpClient httpClient) {
+        if (this.endpoints.size() == 1) {
+            // Nothing to choose between
+            return this.endpoints;
+        }
+
+        List<TokenEndpoint> healthy = new ArrayList<>(this.endpoints.size());
+        List<TokenEndpoint> unhealthy = new ArrayList<>();
+        for (TokenEndpoint endpoint : this.endpoints) {
+            if (endpoint.tryStartProbe()) {
+                this.probe(httpClient, endpoint);
+            }
+
+            if (endpoint.isHealthy()) {
+                healthy.add(endpoint);
+            } else {
+                unhealthy.add(endpoint);
+            }
+        }
+
+        // The sort is stable, so unmeasured endpoints keep their configured order
+        Comparator<TokenEndpoint> byScore = Comparator.comparingDouble(TokenEndpoint::score);
+        healthy.sort(byScore);
+        unhealthy.sort(byScore);
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    /**
+     * Connect to every endpoint so the connections are established before the
+     * first token request.
+     * 
+     * @param httpClient the http client
+     * @return the number of endpoints that responded as healthy
+     * @throws InterruptedException if interrupted while waiting
+     */
+    int warmUp(HttpClient httpClient) throws InterruptedException {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(this.endpoints.size());
+        for (TokenEndpoint endpoint : this.endpoints) {
+            long start = System.nanoTime();
+            futures.add(httpClient
+                    .sendAsync(endpoint.probeRequest(PROBE_TIMEOUT), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        if (error == null && isHealthy(response)) {
+                            endpoint.recordSuccess(System.nanoTime() - start);
+                            return true;
+                        }
+                        this.recordFailure(endpoint);
+                        return false;
+                    }));
+        }
+
+        int reachable = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                if (future.get()) {
+                    reachable++;
+                }
+            } catch (ExecutionException e) {
+                // Handled above, the endpoint is not reachable
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Record the failure of a request to the endpoint.
+     * 
+     * @param endpoint the endpoint
+     */
+    void recordFailure(TokenEndpoint endpoint) {
+        endpoint.recordFailure(this.retryIntervalNanos);
+    }
+
+    /**
+     * Probe the endpoint in the background; any HTTP response other than a
+     * server error or rate limit shows the endpoint is healthy.
+     */
+    private void probe(HttpClient httpClient, TokenEndpoint endpoint) {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<Void>> future;
+        try {
+            future = httpClient.sendAsync(endpoint.probeRequest(PROBE_TIMEOUT), HttpResponse.BodyHandlers.discarding());
+        } catch (RuntimeException e) {
+            future = null;
+        }
+
+        if (future == null) {
+            endpoint.endProbe();
+            return;
+        }
+
+        future.whenComplete((response, error) -> {
+            if (error == null && isHealthy(response)) {
+                endpoint.recordSuccess(System.nanoTime() - start);
+            } else {
+                this.recordFailure(endpoint);
+            }
+            endpoint.endProbe();
+        });
+    }
+
+    /**
+     * Checks if the probe response shows the endpoint is healthy; the probe is
+     * not a valid token request so client errors are expected.
+     */
+    private static boolean isHealthy(HttpResponse<?> response) {
+        return response.statusCode() < 500 && response.statusCode() != 429;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+/**
+ * The TokenErrorCache class caches the errors returned by ServiceAuthCentral
+ * that will not succeed if retried, such as a misconfigured audience, so they
+ * are not requested again until the TTL expires.
+ * 
+ * The cached errors are rethrown as copies without a stack trace so they are
+ * cheap to throw repeatedly.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenErrorCache {
+
+    /**
+     * The number of entries after which expired entries are removed.
+     */
+    private static final int PURGE_SIZE = 1024;
+
+    /**
+     * The time to live for the cached errors in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The statuses of the errors that are cached.
+     */
+    private final Set<Integer> statuses;
+
+    /**
+     * The cached errors.
+     */
+    private final Map<TokenRequest, CachedError> errors = new ConcurrentHashMap<>();
+
+    TokenErrorCache(@NonNull Duration ttl, @NonNull Set<Integer> statuses) {
+        this.ttlNanos = ttl.toNanos();
+        this.statuses = Set.copyOf(statuses);
+    }
+
+    /**
+     * Throw the cached error for the request if there is one.
+     * 
+     * @param request the token request
+     */
+    void check(TokenRequest request) {
+        if (this.ttlNanos <= 0) {
+            return;
+        }
+
+        CachedError cachedError = this.errors.get(request);
+        if (cachedError == null) {
+            return;
+        }
+
+        if (cachedError.isExpired(System.nanoTime())) {
+            this.errors.remove(request, cachedError);
+            return;
+        }
+
+        throw cachedError.exception;
+    }
+
+    /**
+     * Cache the error for the request if its status is not retryable.
+     * 
+     * @param request   the token request
+     * @param exception the error returned for the request
+     */
+    void put(TokenRequest request, SACClientException exception) {
+        if (this.ttlNanos <= 0 || !this.statuses.contains(exception.getStatus())) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (this.errors.size() >= PURGE_SIZE) {
+            this.errors.values().removeIf(cachedError -> cachedError.isExpired(now));
+        }
+
+        this.errors.put(request, new CachedError(now + this.ttlNanos, exception.withoutStackTrace()));
+    }
+
+    @AllArgsConstructor
+    private static class CachedError {
+
+        private final long expiresAt;
+
+        private final SACClientException exception;
+
+        boolean isExpired(long now) {
+            return now - this.expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The TokenRefreshEvent class is the JFR event recorded for each token refresh
+ * in the CachingSACClientDecorator, spanning from the start to the end of the
+ * refresh.
+ * 
+ * Disabled by default, enable serviceauthcentral.TokenRefresh in the recording
+ * settings.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Name("serviceauthcentral.TokenRefresh")
+@Label("Token Refresh")
+@Description("Refresh of a cached token")
+@Category("ServiceAuthCentral")
+@Enabled(false)
+@StackTrace(false)
+class TokenRefreshEvent extends Event {
+
+    @Label("Audience")
+    String audience;
+
+    @Label("Background")
+    boolean background;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * The TokenRefreshPolicy class provides the thresholds used to decide when a
+ * cached token or credentials are refreshed and how long they can be used.
+ * 
+ * A cached token is refreshed once the refresh fraction of its lifetime has
+ * elapsed, or once its remaining lifetime drops below the refresh lead time if
+ * set. If the refresh fails the cached token continues to be served for up to
+ * the maximum staleness past the refresh time. A token or credentials with less
+ * than the minimum remaining lifetime are never used.
+ * 
+ * With a latency multiple set the refresh time adapts to the token endpoint
+ * instead; the token is refreshed once its remaining lifetime drops below the
+ * minimum remaining lifetime plus the multiple of the recent p99 fetch latency
+ * and the retry budget. Long lived tokens are then refreshed close to the end
+ * of their lifetime while short lived tokens from a slow endpoint are refreshed
+ * early enough. Until a fetch latency has been observed the fixed refresh time
+ * is used. The adaptive refresh time is never before a quarter of the lifetime
+ * has elapsed, so a latency spike cannot cause every call to refresh.
+ * 
+ * To avoid every instance that received tokens at the same time refreshing
+ * them at the same time, the jitter can be set to move the refresh time earlier by a random amount
+ * of up to the jitter fraction of the lifetime. The amount is chosen per
+ * instance and per token, so it is stable for a given token but spread across
+ * instances.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Value
+public class TokenRefreshPolicy {
+
+    /**
+     * The default policy refreshing at half of the lifetime and serving until 30
+     * seconds before expiration.
+     */
+    public static final TokenRefreshPolicy DEFAULT = TokenRefreshPolicy.builder().build();
+
+    /**
+     * The largest jitter allowed.
+     */
+    private static final double MAX_JITTER = 0.5;
+
+    /**
+     * The fraction of the lifetime before which the adaptive refresh time is
+     * never set.
+     */
+    private static final double MIN_ADAPTIVE_REFRESH_FRACTION = 0.25;
+
+    /**
+     * The fraction of the lifetime after which the token is refreshed; defaults
+     * to 0.5
+     */
+    private final double refreshFraction;
+
+    /**
+     * The remaining lifetime at which the token is refreshed; overrides the
+     * refresh fraction when set
+     */
+    private final Duration refreshLeadTime;
+
+    /**
+     * The maximum time past the refresh time a token is served when the refresh
+     * fails; null for no limit other than the minimum remaining lifetime
+     */
+    private final Duration maxStaleness;
+
+    /**
+     * The minimum remaining lifetime for a token or credentials to be used;
+     * defaults to 30 seconds
+     */
+    private final Duration minRemainingLifetime;
+
+    /**
+     * The maximum fraction of the lifetime the refresh time is moved earlier by,
+     * between 0 and 0.5; defaults to 0, disabled
+     */
+    private final double jitter;
+
+    /**
+     * The seed for the jitter; defaults to a random value for each instance
+     */
+    private final long jitterSeed;
+
+    /**
+     * The multiple of the recent p99 fetch latency the token is refreshed before
+     * it can no longer be used; 0 to disable the adaptive refresh time
+     */
+    private final double latencyMultiple;
+
+    /**
+     * The time allowed for retrying a failed refresh, added to the adaptive lead
+     * time; defaults to none
+     */
+    private final Duration retryBudget;
+
+    /**
+     * The number of recent fetch latencies the p99 is calculated from; defaults
+     * to 100
+     */
+    private final int latencySampleSize;
+
+    @Builder
+    private TokenRefreshPolicy(double refreshFraction, Duration refreshLeadTime, Duration maxStaleness,
+            @NonNull Duration minRemainingLifetime, double jitter, long jitterSeed, double latencyMultiple,
+            @NonNull Duration retryBudget, int latencySampleSize) {
+        if (!(refreshFraction > 0 && refreshFraction <= 1)) {
+            throw new SACException("refreshFraction must be greater than 0 and at most 1");
+        }
+        requireNonNegative(minRemainingLifetime, "minRemainingLifetime");
+        requireNonNegative(maxStaleness, "maxStaleness");
+        if (!(jitter >= 0 && jitter <= MAX_JITTER)) {
+            // A larger jitter could move the refresh to when the token is received
+            throw new SACException("jitter must be between 0 and " + MAX_JITTER);
+        }
+        if (!(latencyMultiple >= 0 && latencyMultiple < Double.POSITIVE_INFINITY)) {
+            throw new SACException("latencyMultiple must not be negative");
+        }
+        requireNonNegative(retryBudget, "retryBudget");
+        if (latencySampleSize <= 0) {
+            throw new SACException("latencySampleSize must be positive");
+        }
+        if (refreshLeadTime != null && refreshLeadTime.compareTo(minRemainingLifetime) < 0) {
+            // The token would no longer be usable before it is refreshed
+            throw new SACException("refreshLeadTime must be at least minRemainingLifetime");
+        }
+
+        this.refreshFraction = refreshFraction;
+        this.refreshLeadTime = refreshLeadTime;
+        this.maxStaleness = maxStaleness;
+        this.minRemainingLifetime = minRemainingLifetime;
+        this.jitter = jitter;
+        this.jitterSeed = jitterSeed;
+        this.latencyMultiple = latencyMultiple;
+        this.retryBudget = retryBudget;
+        this.latencySampleSize = latencySampleSize;
+    }
+
+    /**
+     * The builder, holding the defaults for the settings that are not set.
+     */
+    public static class TokenRefreshPolicyBuilder {
+
+        private double refreshFraction = 0.5;
+
+        private Duration minRemainingLifetime = Duration.ofSeconds(30);
+
+        private double jitter = 0;
+
+        private long jitterSeed = ThreadLocalRandom.current().nextLong();
+
+        private Duration retryBudget = Duration.ZERO;
+
+        private int latencySampleSize = 100;
+    }
+
+    /**
+     * Checks if the refresh time adapts to the observed fetch latency.
+     * 
+     * @return true if the latency multiple is set
+     */
+    public boolean isAdaptive() {
+        return this.latencyMultiple > 0;
+    }
+
+    /**
+     * Get the time the token should be refreshed.
+     * 
+     * @param response the token response
+     * @return the refresh time
+     */
+    public Instant refreshTime(TokenResponse response) {
+        return this.refreshTime(response, -1);
+    }
+
+    /**
+     * Get the time the token should be refreshed given the recent fetch latency.
+     * 
+     * @param response        the token response
+     * @param fetchLatencyP99 the recent p99 fetch latency in nanoseconds; -1 if
+     *                        none observed
+     * @return the refresh time
+     */
+    Instant refreshTime(TokenResponse response, long fetchLatencyP99) {
+        long lifetimeMillis = response.getExpiresIn() * 1000;
+
+        Instant refreshTime;
+        if (this.isAdaptive() && fetchLatencyP99 >= 0) {
+            // Leave enough time to fetch a new token, even a slow one, before the
+            // token can no longer be used
+            Duration leadTime = this.minRemainingLifetime
+                    .plusNanos((long) (fetchLatencyP99 * this.latencyMultiple))
+                    .plus(this.retryBudget);
+            refreshTime = expiration(response).minus(leadTime);
+
+            Instant earliest = response.getCreated()
+                    .plusMillis((long) (lifetimeMillis * MIN_ADAPTIVE_REFRESH_FRACTION));
+            if (refreshTime.isBefore(earliest)) {
+                refreshTime = earliest;
+            }
+        } else if (this.refreshLeadTime != null) {
+            refreshTime = expiration(response).minus(this.refreshLeadTime);
+        } else {
+            refreshTime = response.getCreated().plusMillis((long) (lifetimeMillis * this.refreshFraction));
+        }
+
+        // Jitter only moves the refresh earlier, but never before the token was
+        // received
+        refreshTime = refreshTime.minusMillis((long) (lifetimeMillis * this.jitter * this.jitterFactor(response)));
+        if (refreshTime.isBefore(response.getCreated())) {
+            return response.getCreated();
+        }
+
+        return refreshTime;
+    }
+
+    /**
+     * Get the jitter factor for the token.
+     * 
+     * @param response the token response
+     * @return the factor between 0 inclusive and 1 exclusive
+     */
+    private double jitterFactor(TokenResponse response) {
+        if (this.jitter <= 0) {
+            return 0;
+        }
+
+        long hash = response.getAccessToken() != null ? response.getAccessToken().hashCode()
+                : response.getCreated().toEpochMilli();
+
+        // Mix the seed and the token so the factor is stable for the token but
+        // uniformly spread across instances
+        long z = this.jitterSeed ^ (hash * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = z ^ (z >>> 33);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Checks if the token should be refreshed.
+     * 
+     * @param response the token response
+     * @param now      the current time
+     * @return true if the token has reached its refresh time
+     */
+    boolean needsRefresh(TokenResponse response, Instant now) {
+        return this.needsRefresh(response, now, -1);
+    }
+
+    /**
+     * Checks if the token should be refreshed given the recent fetch latency.
+     * 
+     * @param response        the token response
+     * @param now             the current time
+     * @param fetchLatencyP99 the recent p99 fetch latency in nanoseconds; -1 if
+     *                        none observed
+     * @return true if the token has reached its refresh time
+     */
+    boolean needsRefresh(TokenResponse response, Instant now, long fetchLatencyP99) {
+        return !now.isBefore(this.refreshTime(response, fetchLatencyP99));
+    }
+
+    /**
+     * Checks if the token has at least the minimum remaining lifetime.
+     * 
+     * @param response the token response
+     * @param now      the current time
+     * @return true if the token can be used
+     */
+    boolean isUsable(TokenResponse response, Instant now) {
+        return now.isBefore(expiration(response).minus(this.minRemainingLifetime));
+    }
+
+    /**
+     * Checks if the token can be served while it is being refreshed or after the
+     * refresh failed.
+     * 
+     * @param response the token response
+     * @param now      the current time
+     * @return true if the token can be served
+     */
+    boolean canServeStale(TokenResponse response, Instant now) {
+        return this.canServeStale(response, now, -1);
+    }
+
+    /**
+     * Checks if the token can be served while it is being refreshed or after the
+     * refresh failed given the recent fetch latency.
+     * 
+     * @param response        the token response
+     * @param now             the current time
+     * @param fetchLatencyP99 the recent p99 fetch latency in nanoseconds; -1 if
+     *                        none observed
+     * @return true if the token can be served
+     */
+    boolean canServeStale(TokenResponse response, Instant now, long fetchLatencyP99) {
+        if (!this.isUsable(response, now)) {
+            return false;
+        }
+
+        return this.maxStaleness == null
+                || now.isBefore(this.refreshTime(response, fetchLatencyP99).plus(this.maxStaleness));
+    }
+
+    /**
+     * Checks if the credentials have at least the minimum remaining lifetime.
+     * 
+     * @param credentials the credentials
+     * @return true if the credentials can be used
+     */
+    boolean isUsable(SACCredentials credentials) {
+        return !credentials.isExpired((int) this.minRemainingLifetime.toSeconds());
+    }
+
+    private static void requireNonNegative(Duration duration, String name) {
+        if (duration != null && duration.isNegative()) {
+            throw new SACException(name + " must not be negative");
+        }
+    }
+
+    private static Instant expiration(TokenResponse response) {
+        return response.getCreated().plusSeconds(response.getExpiresIn());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TokenRequestBody class encodes the form body of token requests directly
+ * to bytes.
+ * 
+ * The audience and scope of each TokenRequest and the constant credential
+ * fields are encoded once and reused, so only the JWT assertion is encoded for
+ * each request.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenRequestBody {
+
+    private static final int MAX_REQUESTS = 1024;
+
+    private static final byte[] CLIENT_CREDENTIALS_GRANT = UrlFormEncoder.encodeParam("grant_type",
+            "client_credentials");
+
+    private static final byte[] JWT_BEARER_GRANT = UrlFormEncoder.encodeParam("grant_type",
+            "urn:ietf:params:oauth:grant-type:jwt-bearer");
+
+    private static final byte[] ASSERTION_PREFIX = UrlFormEncoder.encode("assertion");
+
+    private final Map<TokenRequest, byte[]> requestFragments = new ConcurrentHashMap<>();
+
+    private volatile CredentialsFragment credentialsFragment;
+
+    /**
+     * Encodes the form body for the request.
+     * 
+     * @param request     the token request
+     * @param credentials the credentials to authenticate with
+     * @return the encoded form body
+     */
+    byte[] encode(TokenRequest request, SACCredentials credentials) {
+        byte[] requestFragment = this.requestFragment(request);
+
+        if (credentials instanceof JwtAssertionCredentials) {
+            JwtAssertionCredentials jwt = (JwtAssertionCredentials) credentials;
+            byte[] credentialsFragment = this.credentialsFragment(jwt.getClientId(), null);
+            byte[] assertion = UrlFormEncoder.encode(jwt.getJwtAssertion());
+
+            // grant_type and client_id are reused, only the assertion is appended
+            byte[] body = new byte[requestFragment.length + credentialsFragment.length
+                    + ASSERTION_PREFIX.length + assertion.length + 3];
+            int pos = copy(requestFragment, body, 0);
+            body[pos++] = '&';
+            pos = copy(credentialsFragment, body, pos);
+            body[pos++] = '&';
+            pos = copy(ASSERTION_PREFIX, body, pos);
+            body[pos++] = '=';
+            copy(assertion, body, pos);
+            return body;
+        } else {
+            ClientCredentials client = (ClientCredentials) credentials;
+            return UrlFormEncoder.join(requestFragment,
+                    this.credentialsFragment(client.getClientId(), client.getClientSecret()));
+        }
+    }
+
+    private byte[] requestFragment(TokenRequest request) {
+        byte[] fragment = this.requestFragments.get(request);
+        if (fragment != null) {
+            return fragment;
+        }
+
+        byte[] scope = null;
+        if (request.getScopes() != null && request.getScopes().size() > 0) {
+            // Scopes are optional
+            scope = UrlFormEncoder.encodeParam("scope", String.join(" ", request.getScopes()));
+        }
+
+        fragment = UrlFormEncoder.join(UrlFormEncoder.encodeParam("audience", request.getAudience()), scope);
+
+        // A bounded cache; the set of requests is small and stable in practice
+        if (this.requestFragments.size() >= MAX_REQUESTS) {
+            this.requestFragments.clear();
+        }
+        this.requestFragments.put(request, fragment);
+
+        return fragment;
+    }
+
+    private byte[] credentialsFragment(String clientId, String clientSecret) {
+        CredentialsFragment cached = this.credentialsFragment;
+        if (cached != null && cached.matches(clientId, clientSecret)) {
+            return cached.fragment;
+        }
+
+        byte[] fragment;
+        if (clientSecret == null) {
+            fragment = UrlFormEncoder.join(JWT_BEARER_GRANT, UrlFormEncoder.encodeParam("client_id", clientId));
+        } else {
+            fragment = UrlFormEncoder.join(CLIENT_CREDENTIALS_GRANT,
+                    UrlFormEncoder.encodeParam("client_id", clientId),
+                    UrlFormEncoder.encodeParam("client_secret", clientSecret));
+        }
+
+        this.credentialsFragment = new CredentialsFragment(clientId, clientSecret, fragment);
+        return fragment;
+    }
+
+    private static int copy(byte[] source, byte[] target, int pos) {
+        System.arraycopy(source, 0, target, pos, source.length);
+        return pos + source.length;
+    }
+
+    private static final class CredentialsFragment {
+
+        private final String clientId;
+
+        private final String clientSecret;
+
+        private final byte[] fragment;
+
+        private CredentialsFragment(String clientId, String clientSecret, byte[] fragment) {
+            this.clientId = clientId;
+            this.clientSecret = clientSecret;
+            this.fragment = fragment;
+        }
+
+        private boolean matches(String clientId, String clientSecret) {
+            return this.clientId.equals(clientId) && (this.clientSecret == null ? clientSecret == null
+                    : this.clientSecret.equals(clientSecret));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import lombok.NonNull;
+
+/**
+ * The TokenRequestLimiter class enforces the TokenRequestLimits for a token
+ * endpoint.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenRequestLimiter {
+
+    /**
+     * The permit returned when there is no concurrency limit.
+     */
+    private static final Permit NO_PERMIT = () -> {
+    };
+
+    /**
+     * The maximum time to wait in nanoseconds.
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * The tokens added to the bucket per nanosecond; zero for no rate limit.
+     */
+    private final double tokensPerNano;
+
+    /**
+     * The maximum number of tokens in the bucket.
+     */
+    private final double capacity;
+
+    /**
+     * The limit on the concurrent requests; null for no limit.
+     */
+    private final Semaphore concurrency;
+
+    /**
+     * The tokens in the bucket, negative when reserved by waiting callers.
+     */
+    private double tokens;
+
+    /**
+     * The last time the bucket was refilled.
+     */
+    private long lastRefill;
+
+    TokenRequestLimiter(@NonNull TokenRequestLimits limits) {
+        this.maxWaitNanos = limits.getMaxWait().toNanos();
+
+        if (limits.getRequestsPerSecond() != null) {
+            this.tokensPerNano = limits.getRequestsPerSecond() / TimeUnit.SECONDS.toNanos(1);
+            if (limits.getBurst() != null) {
+                this.capacity = limits.getBurst();
+            } else {
+                this.capacity = Math.max(1, Math.ceil(limits.getRequestsPerSecond()));
+            }
+        } else {
+            this.tokensPerNano = 0;
+            this.capacity = 0;
+        }
+
+        if (limits.getMaxConcurrentRequests() != null) {
+            // Fair so waiting callers are allowed in the order they arrived
+            this.concurrency = new Semaphore(limits.getMaxConcurrentRequests(), true);
+        } else {
+            this.concurrency = null;
+        }
+
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Wait until a request is allowed.
+     * 
+     * @return the permit which must be closed once the request completes
+     */
+    Permit acquire() {
+        return this.acquire(Deadline.NONE);
+    }
+
+    /**
+     * Wait until a request is allowed, waiting no longer than the deadline.
+     * 
+     * @param requestDeadline the deadline of the token request
+     * @return the permit which must be closed once the request completes
+     * @throws SACTimeoutException if the request is not allowed in time
+     */
+    Permit acquire(@NonNull Deadline requestDeadline) {
+        long maxWait = requestDeadline.remainingNanos(this.maxWaitNanos);
+        long deadline = System.nanoTime() + maxWait;
+
+        // Wait for the rate limit first so the concurrency permit is not held while
+        // waiting
+        long wait = 0;
+        if (this.tokensPerNano > 0) {
+            wait = this.reserve(maxWait);
+            if (wait < 0) {
+                throw new SACTimeoutException("Timed out waiting to send token request");
+            }
+        }
+
+        boolean allowed = false;
+        try {
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            if (this.concurrency == null) {
+                allowed = true;
+                return NO_PERMIT;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (!this.concurrency.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                throw new SACTimeoutException("Timed out waiting to send token request");
+            }
+            allowed = true;
+            return this.concurrency::release;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted waiting to send token request", e);
+        } finally {
+            if (!allowed && this.tokensPerNano > 0) {
+                // The request is not sent, so the reserved token is returned
+                this.refund();
+            }
+        }
+    }
+
+    /**
+     * Allow a request only if it can be sent without waiting, such as a hedged
+     * request that is not worth waiting for.
+     * 
+     * @return the permit which must be closed once the request completes; null if
+     *         the request is not allowed now
+     * @throws InterruptedException if interrupted
+     */
+    Permit tryAcquire() throws InterruptedException {
+        if (this.tokensPerNano > 0 && this.reserve(0) != 0) {
+            return null;
+        }
+
+        if (this.concurrency == null) {
+            return NO_PERMIT;
+        }
+
+        // Timed so callers already waiting for a permit go first
+        if (!this.concurrency.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            if (this.tokensPerNano > 0) {
+                this.refund();
+            }
+            return null;
+        }
+        return this.concurrency::release;
+    }
+
+    /**
+     * Reserve a token from the bucket.
+     * 
+     * @param maxWaitNanos the maximum time the caller can wait
+     * @return the nanoseconds to wait before the reserved token is available; -1
+     *         if it would exceed the maximum wait and nothing was reserved
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+        this.lastRefill = now;
+
+        if (this.tokens >= 1) {
+            this.tokens -= 1;
+            return 0;
+        }
+
+        long wait = (long) Math.ceil((1 - this.tokens) / this.tokensPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+
+        this.tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Return a reserved token to the bucket.
+     */
+    private synchronized void refund() {
+        this.tokens = Math.min(this.capacity, this.tokens + 1);
+    }
+
+    /**
+     * The Permit interface represents an allowed request.
+     */
+    interface Permit extends AutoCloseable {
+
+        /**
+         * Release the permit.
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The TokenRequestLimits class provides the limits on the token requests sent
+ * to a ServiceAuthCentral token endpoint.
+ * 
+ * Requests are limited by a token bucket allowing a sustained number of
+ * requests per second with bursts, and by the number of requests in flight at
+ * the same time. Callers over either limit wait in order up to the maximum wait
+ * before failing.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Value
+public class TokenRequestLimits {
+
+    /**
+     * The default maximum time to wait for a request to be allowed
+     */
+    private static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(10);
+
+    /**
+     * The sustained number of requests per second; null for no limit
+     */
+    private final Double requestsPerSecond;
+
+    /**
+     * The number of requests that can be sent at once after being idle; defaults
+     * to the requests per second rounded up
+     */
+    private final Integer burst;
+
+    /**
+     * The number of requests that can be in flight at the same time; null for no
+     * limit
+     */
+    private final Integer maxConcurrentRequests;
+
+    /**
+     * The maximum time to wait for a request to be allowed; defaults to 10
+     * seconds
+     */
+    private final Duration maxWait;
+
+    @Builder
+    private TokenRequestLimits(Double requestsPerSecond, Integer burst, Integer maxConcurrentRequests,
+            Duration maxWait) {
+        if (requestsPerSecond != null && !(requestsPerSecond > 0 && requestsPerSecond < Double.POSITIVE_INFINITY)) {
+            throw new SACException("requestsPerSecond must be positive");
+        }
+        if (burst != null && burst <= 0) {
+            throw new SACException("burst must be positive");
+        }
+        if (maxConcurrentRequests != null && maxConcurrentRequests <= 0) {
+            throw new SACException("maxConcurrentRequests must be positive");
+        }
+        if (maxWait != null && maxWait.isNegative()) {
+            throw new SACException("maxWait must not be negative");
+        }
+
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxWait = maxWait == null ? DEFAULT_MAX_WAIT : maxWait;
+    }
+}
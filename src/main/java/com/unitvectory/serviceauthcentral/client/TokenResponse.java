@@ -15,9 +15,7 @@ package com.unitvectory.serviceauthcentral.client;
 
 import java.time.Instant;
 
-import lombok.AccessLevel;
 import lombok.Builder;
-import lombok.Getter;
 import lombok.Value;
 
 /**
@@ -41,21 +39,32 @@ public class TokenResponse {
     /**
      * The expires_in field
      */
-    @Getter(AccessLevel.PACKAGE)
     private final long expiresIn;
 
     /**
-     * The created field, package-private
+     * The time the token was received; expires_in is relative to this.
      */
-    @Getter(AccessLevel.PACKAGE)
     private final Instant created;
 
+    /**
+     * Create a new token response.
+     * 
+     * @param accessToken the access token
+     * @param tokenType   the token type
+     * @param expiresIn   the number of seconds the token is valid for
+     * @param created     the time the token was received; defaults to now, only
+     *                    needs to be set when restoring a persisted token
+     */
     @Builder
-    private TokenResponse(String accessToken, String tokenType, long expiresIn) {
+    private TokenResponse(String accessToken, String tokenType, long expiresIn, Instant created) {
         this.accessToken = accessToken;
         this.tokenType = tokenType;
         this.expiresIn = expiresIn;
-        this.created = Instant.now();
+        if (created == null) {
+            this.created = Instant.now();
+        } else {
+            this.created = created;
+        }
     }
 
     /**
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+
+/**
+ * The TokenStore interface provides the storage used by the
+ * CachingSACClientDecorator to hold cached tokens.
+ * 
+ * Implementations may share tokens beyond a single decorator, such as between
+ * processes on the same host, in which case the refresh lock is used to ensure
+ * only one caller requests a new token at a time.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+public interface TokenStore {
+
+    /**
+     * Get the stored token for the request.
+     * 
+     * @param request the token request
+     * @return the stored token response; null if none is stored
+     */
+    TokenResponse get(TokenRequest request);
+
+    /**
+     * Store the token for the request, replacing any existing token.
+     * 
+     * @param request  the token request
+     * @param response the token response
+     */
+    void put(TokenRequest request, TokenResponse response);
+
+    /**
+     * Remove all of the stored tokens.
+     * 
+     * When the store is shared the tokens are removed for every user of it.
+     */
+    void clear();
+
+    /**
+     * Acquire the exclusive lock used while refreshing the token for the request.
+     * 
+     * The lock is held until the returned RefreshLock is closed. While the lock is
+     * held, get must return the most recently stored token.
+     * 
+     * @param request the token request
+     * @return the acquired lock
+     */
+    RefreshLock lock(TokenRequest request);
+
+    /**
+     * Acquire the exclusive lock used while refreshing the token for the request,
+     * giving up once the timeout passes.
+     * 
+     * The default implementation ignores the timeout for stores that do not
+     * support waiting with a limit.
+     * 
+     * @param request the token request
+     * @param timeout the maximum time to wait for the lock
+     * @return the acquired lock
+     * @throws SACTimeoutException if the timeout passed before the lock was
+     *                             acquired
+     */
+    default RefreshLock lock(TokenRequest request, Duration timeout) {
+        return this.lock(request);
+    }
+
+    /**
+     * The RefreshLock interface represents an acquired refresh lock.
+     */
+    interface RefreshLock extends AutoCloseable {
+
+        /**
+         * Release the lock.
+         */
+        @Override
+        void close();
+    }
+}
@@ -13,11 +13,7 @@
  */
 package com.unitvectory.serviceauthcentral.client;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 import lombok.experimental.UtilityClass;
 
@@ -28,29 +24,99 @@ import lombok.experimental.UtilityClass;
  */
 @UtilityClass
 class UrlFormEncoder {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
     /**
-     * Encodes the parameters as x-www-form-urlencoded format.
+     * Encodes a single name and value pair as the bytes of name=value.
      * 
-     * @param params A map of parameters to be encoded.
-     * @return A URL-encoded string in application/x-www-form-urlencoded format.
+     * @param name  The parameter name.
+     * @param value The parameter value.
+     * @return The encoded parameter.
      */
-    static String encodeFormParams(Map<String, String> params) {
-        return params.entrySet().stream()
-                .map(entry -> encodeParam(entry.getKey()) + "=" + encodeParam(entry.getValue()))
-                .collect(Collectors.joining("&"));
+    static byte[] encodeParam(String name, String value) {
+        byte[] encodedName = encode(name);
+        byte[] encodedValue = encode(value);
+        byte[] param = new byte[encodedName.length + 1 + encodedValue.length];
+        System.arraycopy(encodedName, 0, param, 0, encodedName.length);
+        param[encodedName.length] = '=';
+        System.arraycopy(encodedValue, 0, param, encodedName.length + 1, encodedValue.length);
+        return param;
     }
 
     /**
-     * Encodes a single URL parameter.
+     * Joins already encoded fragments with the &amp; separator, skipping null
+     * fragments.
      * 
-     * @param param The parameter to be encoded.
-     * @return The encoded parameter.
+     * @param fragments The encoded fragments.
+     * @return The joined fragments.
      */
-    private static String encodeParam(String param) {
-        try {
-            return URLEncoder.encode(param, StandardCharsets.UTF_8.toString());
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("UTF-8 encoding not supported", e);
+    static byte[] join(byte[]... fragments) {
+        int length = -1;
+        for (byte[] fragment : fragments) {
+            if (fragment != null) {
+                length += fragment.length + 1;
+            }
+        }
+
+        byte[] joined = new byte[Math.max(length, 0)];
+        int pos = 0;
+        for (byte[] fragment : fragments) {
+            if (fragment == null) {
+                continue;
+            }
+            if (pos > 0) {
+                joined[pos++] = '&';
+            }
+            System.arraycopy(fragment, 0, joined, pos, fragment.length);
+            pos += fragment.length;
         }
+
+        return joined;
+    }
+
+    /**
+     * Encodes a single value with the same rules as URLEncoder using UTF-8, but
+     * directly to bytes.
+     * 
+     * @param value The value to be encoded.
+     * @return The encoded value.
+     */
+    static byte[] encode(String value) {
+        // Fast path for values that need no encoding, such as JWT assertions
+        int i = 0;
+        while (i < value.length() && isUnreserved(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = 0;
+        for (byte b : bytes) {
+            length += isUnreserved((char) (b & 0xFF)) || b == ' ' ? 1 : 3;
+        }
+
+        byte[] encoded = new byte[length];
+        int pos = 0;
+        for (byte b : bytes) {
+            if (isUnreserved((char) (b & 0xFF))) {
+                encoded[pos++] = b;
+            } else if (b == ' ') {
+                encoded[pos++] = '+';
+            } else {
+                encoded[pos++] = '%';
+                encoded[pos++] = HEX[(b >> 4) & 0xF];
+                encoded[pos++] = HEX[b & 0xF];
+            }
+        }
+
+        return encoded;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The VerifiedToken class contains the claims of a token that passed
+ * verification.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+@Value
+@Builder
+public class VerifiedToken {
+
+    /**
+     * The subject, the client id of the caller
+     */
+    String subject;
+
+    /**
+     * The issuer
+     */
+    String issuer;
+
+    /**
+     * The audiences
+     */
+    List<String> audiences;
+
+    /**
+     * The scopes; empty if the token has none
+     */
+    Set<String> scopes;
+
+    /**
+     * The time the token was issued; null if not present
+     */
+    Instant issuedAt;
+
+    /**
+     * The time the token expires
+     */
+    Instant expiration;
+
+    /**
+     * The id of the key that signed the token
+     */
+    String keyId;
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The VerifiedTokenCache class caches the result of verifying a token so a
+ * repeated token costs a hash and a lookup instead of a signature check.
+ * 
+ * Tokens are keyed by their SHA-256 digest so the cache does not hold on to
+ * the tokens themselves, and an entry is only used until the token expires.
+ * The cache is bounded; once full, the oldest entry is evicted to make room
+ * for each new token, which with tokens of the same lifetime is the entry
+ * closest to expiring.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class VerifiedTokenCache {
+
+    /**
+     * The digest instances, which are not thread safe, reused per thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new SACException("SHA-256 is not supported", e);
+        }
+    });
+
+    private final int maxEntries;
+
+    private final long clockSkewSeconds;
+
+    /**
+     * The cached tokens in insertion order; guarded by this.
+     */
+    private final Map<ByteBuffer, VerifiedToken> entries;
+
+    VerifiedTokenCache(int maxEntries, long clockSkewSeconds) {
+        this.maxEntries = maxEntries;
+        this.clockSkewSeconds = clockSkewSeconds;
+        this.entries = new LinkedHashMap<>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, VerifiedToken> eldest) {
+                return this.size() > VerifiedTokenCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Compute the cache key for the token.
+     * 
+     * @param token the token
+     * @return the key
+     */
+    static ByteBuffer key(String token) {
+        return ByteBuffer.wrap(DIGEST.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Get the verified token if it is cached and not expired.
+     * 
+     * @param key the key of the token
+     * @return the verified token; null if not cached
+     */
+    synchronized VerifiedToken get(ByteBuffer key) {
+        VerifiedToken token = this.entries.get(key);
+        if (token == null) {
+            return null;
+        }
+
+        if (this.isExpired(token, Instant.now().getEpochSecond())) {
+            this.entries.remove(key);
+            return null;
+        }
+
+        return token;
+    }
+
+    /**
+     * Cache a verified token, evicting the oldest entry if the cache is full.
+     * 
+     * @param key   the key of the token
+     * @param token the verified token
+     */
+    synchronized void put(ByteBuffer key, VerifiedToken token) {
+        this.entries.put(key, token);
+    }
+
+    /**
+     * Get the number of cached tokens.
+     * 
+     * @return the number of cached tokens
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    private boolean isExpired(VerifiedToken token, long now) {
+        // Matches the expiration check when verifying
+        return now - this.clockSkewSeconds >= token.getExpiration().getEpochSecond();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress test for the CachingCredentialsProviderDecorator class, checking its
+ * guarantees while many threads use it at the same time.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class CachingCredentialsProviderDecoratorStressTest {
+
+    private static final int THREADS = 32;
+
+    private static final Duration RUN_DURATION = Duration.ofMillis(1500);
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    private final ExecutorService fetchExecutor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        this.threads.shutdownNow();
+        this.fetchExecutor.shutdownNow();
+        assertTrue(this.threads.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void singleFetchTest() throws Exception {
+        CountingProvider upstream = new CountingProvider(Duration.ofHours(1), Duration.ofMillis(10),
+                this.fetchExecutor);
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(upstream)
+                .build();
+
+        for (int round = 1; round <= 20; round++) {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            Queue<SACCredentials> results = new ConcurrentLinkedQueue<>();
+            this.runAll(THREADS, thread -> {
+                barrier.await();
+                results.add(getCredentials(cachingProvider, thread % 2 == 0));
+            });
+
+            // Synchronous and asynchronous callers share the one fetch
+            assertEquals(round, upstream.total.get());
+            assertEquals(1, results.stream().distinct().count());
+            cachingProvider.clearCache();
+        }
+
+        assertEquals(1, upstream.maxConcurrent.get());
+    }
+
+    @Test
+    void noExpiredCredentialsTest() throws Exception {
+        CountingProvider upstream = new CountingProvider(Duration.ofSeconds(3), Duration.ofMillis(20),
+                this.fetchExecutor);
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(upstream)
+                .refreshPolicy(TokenRefreshPolicy.builder().minRemainingLifetime(Duration.ofSeconds(1)).build())
+                .build();
+
+        AtomicLong expired = new AtomicLong();
+        long end = System.nanoTime() + Duration.ofMillis(2500).toNanos();
+        this.runAll(THREADS, thread -> {
+            while (System.nanoTime() < end) {
+                JwtAssertionCredentials credentials = (JwtAssertionCredentials) getCredentials(cachingProvider,
+                        ThreadLocalRandom.current().nextBoolean());
+                if (!Instant.now().isBefore(credentials.getExpiration())) {
+                    expired.incrementAndGet();
+                }
+                LockSupport.parkNanos(100_000);
+            }
+        });
+
+        assertEquals(0, expired.get(), "expired credentials returned");
+        assertEquals(1, upstream.maxConcurrent.get(), "concurrent fetches");
+
+        // The credentials are replaced once they have less than a second left
+        assertTrue(upstream.total.get() >= 2 && upstream.total.get() <= 4, upstream.total.get() + " fetches");
+    }
+
+    @Test
+    void clearCacheDuringFetchTest() throws Exception {
+        CountingProvider upstream = new CountingProvider(Duration.ofHours(1), Duration.ofMillis(5),
+                this.fetchExecutor);
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(upstream)
+                .build();
+
+        // The start and end of each clear, in order
+        List<long[]> clears = new ArrayList<>();
+
+        // The start of each call and the assertion it received
+        Queue<Map.Entry<Long, String>> observations = new ConcurrentLinkedQueue<>();
+
+        long end = System.nanoTime() + RUN_DURATION.toNanos();
+        Future<?> clearer = this.threads.submit(() -> {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                cachingProvider.clearCache();
+                clears.add(new long[] { start, System.nanoTime() });
+                Thread.sleep(ThreadLocalRandom.current().nextInt(1, 4));
+            }
+            return null;
+        });
+
+        this.runAll(THREADS, thread -> {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                JwtAssertionCredentials credentials = (JwtAssertionCredentials) getCredentials(cachingProvider,
+                        thread % 4 != 0);
+                observations.add(Map.entry(start, credentials.getJwtAssertion()));
+                LockSupport.parkNanos(100_000);
+            }
+        });
+        clearer.get();
+
+        // A call starting after a clear completed never receives credentials
+        // whose fetch started before that clear began
+        long violations = 0;
+        for (Map.Entry<Long, String> observation : observations) {
+            long clearStart = Long.MIN_VALUE;
+            for (int i = clears.size() - 1; i >= 0; i--) {
+                if (clears.get(i)[1] < observation.getKey()) {
+                    clearStart = clears.get(i)[0];
+                    break;
+                }
+            }
+
+            if (upstream.fetchStart(observation.getValue()) < clearStart) {
+                violations++;
+            }
+        }
+
+        assertEquals(0, violations, "credentials fetched before a clear served after it");
+        assertTrue(clears.size() > 10);
+    }
+
+    @Test
+    void interruptionTest() throws Exception {
+        // The credentials expire immediately so every call fetches while holding
+        // the lock
+        CountingProvider upstream = new CountingProvider(Duration.ZERO, Duration.ZERO, this.fetchExecutor);
+        FaultInjector faults = FaultInjector.builder().latency(Duration.ofMillis(2)).build();
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(FaultInjectingCredentialsProvider.builder().provider(upstream).faults(faults).build())
+                .refreshPolicy(TokenRefreshPolicy.builder().minRemainingLifetime(Duration.ZERO).build())
+                .build();
+
+        AtomicLong successes = new AtomicLong();
+        AtomicLong interrupted = new AtomicLong();
+        AtomicLong lostInterrupts = new AtomicLong();
+        List<Thread> workers = new CopyOnWriteArrayList<>();
+        long end = System.nanoTime() + RUN_DURATION.toNanos();
+
+        Future<?> chaos = this.threads.submit(() -> {
+            while (System.nanoTime() < end) {
+                if (!workers.isEmpty()) {
+                    workers.get(ThreadLocalRandom.current().nextInt(workers.size())).interrupt();
+                }
+                Thread.sleep(1);
+            }
+            return null;
+        });
+
+        this.runAll(THREADS, thread -> {
+            workers.add(Thread.currentThread());
+            try {
+                while (System.nanoTime() < end) {
+                    try {
+                        cachingProvider.getCredentials();
+                        successes.incrementAndGet();
+                    } catch (SACException e) {
+                        if (!Thread.currentThread().isInterrupted()) {
+                            lostInterrupts.incrementAndGet();
+                        }
+                        interrupted.incrementAndGet();
+                    }
+                    Thread.interrupted();
+                }
+            } finally {
+                workers.remove(Thread.currentThread());
+                Thread.interrupted();
+            }
+        });
+        chaos.get();
+
+        assertTrue(interrupted.get() > 0);
+        assertTrue(successes.get() > 0);
+        assertEquals(0, lostInterrupts.get(), "interrupt flag cleared on failure");
+
+        // The lock was not left held by an interrupted caller
+        this.runAll(2, thread -> getCredentials(cachingProvider, thread == 0));
+    }
+
+    private static SACCredentials getCredentials(CachingCredentialsProviderDecorator provider, boolean async) {
+        if (async) {
+            return provider.getCredentialsAsync().join();
+        }
+
+        return provider.getCredentials();
+    }
+
+    /**
+     * Run the task on the given number of threads, failing if any of them fails
+     * or does not finish in time.
+     */
+    private void runAll(int count, StressTask task) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            int thread = t;
+            futures.add(this.threads.submit(() -> {
+                task.run(thread);
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StressTask {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * A provider issuing numbered credentials, counting the fetches and the most
+     * fetches in progress at the same time. Asynchronous fetches run on the
+     * executor.
+     */
+    private static class CountingProvider implements CredentialsProvider {
+
+        private final Duration lifetime;
+
+        private final Duration latency;
+
+        private final ExecutorService executor;
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private final Map<String, Long> fetchStarts = new ConcurrentHashMap<>();
+
+        CountingProvider(Duration lifetime, Duration latency, ExecutorService executor) {
+            this.lifetime = lifetime;
+            this.latency = latency;
+            this.executor = executor;
+        }
+
+        @Override
+        public SACCredentials getCredentials() {
+            return this.fetch(System.nanoTime());
+        }
+
+        @Override
+        public CompletableFuture<SACCredentials> getCredentialsAsync() {
+            long start = System.nanoTime();
+            return CompletableFuture.supplyAsync(() -> this.fetch(start), this.executor);
+        }
+
+        private SACCredentials fetch(long start) {
+            this.maxConcurrent.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+            try {
+                if (!this.latency.isZero()) {
+                    Thread.sleep(this.latency.toMillis());
+                }
+
+                String assertion = "assertion" + this.total.incrementAndGet();
+                this.fetchStarts.put(assertion, start);
+                return JwtAssertionCredentials.builder()
+                        .clientId("client")
+                        .jwtAssertion(assertion)
+                        .expiration(Instant.now().plus(this.lifetime))
+                        .build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted", e);
+            } finally {
+                this.inFlight.decrementAndGet();
+            }
+        }
+
+        long fetchStart(String assertion) {
+            return this.fetchStarts.get(assertion);
+        }
+    }
+}
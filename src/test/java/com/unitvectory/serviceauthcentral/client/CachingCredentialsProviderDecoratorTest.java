@@ -14,6 +14,17 @@
 package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -60,4 +71,109 @@ class CachingCredentialsProviderDecoratorTest {
         // But the cached credentials will still be "2"
         assertEquals("2", ((ClientCredentials) cachingProvider.getCredentials()).getClientSecret());
     }
+
+    @Test
+    void getStatsTest() {
+        AtomicBoolean fail = new AtomicBoolean();
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(() -> {
+                    if (fail.get()) {
+                        throw new SACException("unavailable");
+                    }
+                    return JwtAssertionCredentials.builder()
+                            .clientId("client")
+                            .jwtAssertion("a.b.c")
+                            .expiration(Instant.now().plusSeconds(3600))
+                            .build();
+                })
+                .build();
+
+        assertNull(cachingProvider.getRemainingLifetime());
+
+        cachingProvider.getCredentials();
+        cachingProvider.getCredentials();
+        cachingProvider.getCredentials();
+
+        CacheStats stats = cachingProvider.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getEntries());
+        assertTrue(stats.getEstimatedSize() > 0);
+
+        Duration remaining = cachingProvider.getRemainingLifetime();
+        assertTrue(remaining.compareTo(Duration.ofSeconds(3500)) > 0);
+
+        // Clearing evicts the credentials and the next fetch fails
+        cachingProvider.clearCache();
+        fail.set(true);
+        assertThrows(SACException.class, () -> cachingProvider.getCredentials());
+
+        stats = cachingProvider.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(1, stats.getRefreshFailures());
+        assertEquals(0, stats.getEntries());
+        assertEquals(0, stats.getEstimatedSize());
+    }
+
+    @Test
+    void getCredentialsAsyncTest() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<SACCredentials> fetch = new CompletableFuture<>();
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(new CredentialsProvider() {
+
+                    @Override
+                    public SACCredentials getCredentials() {
+                        throw new AssertionError("Expected the asynchronous variant");
+                    }
+
+                    @Override
+                    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+                        calls.incrementAndGet();
+                        return fetch;
+                    }
+                })
+                .build();
+
+        // Concurrent callers share one fetch
+        CompletableFuture<SACCredentials> first = cachingProvider.getCredentialsAsync();
+        CompletableFuture<SACCredentials> second = cachingProvider.getCredentialsAsync();
+        assertFalse(first.isDone());
+        assertEquals(1, calls.get());
+
+        SACCredentials credentials = ClientCredentials.builder().clientId("client").clientSecret("secret").build();
+        fetch.complete(credentials);
+        assertEquals(credentials, first.join());
+        assertEquals(credentials, second.join());
+
+        // The credentials are cached for both variants
+        assertTrue(cachingProvider.getCredentialsAsync().isDone());
+        assertEquals(credentials, cachingProvider.getCredentials());
+        assertEquals(1, calls.get());
+        assertEquals(1, cachingProvider.getStats().getMisses());
+        assertEquals(3, cachingProvider.getStats().getHits());
+    }
+
+    @Test
+    void getCredentialsAsyncFailureTest() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        CachingCredentialsProviderDecorator cachingProvider = CachingCredentialsProviderDecorator.builder()
+                .provider(() -> {
+                    if (fail.get()) {
+                        throw new SACException("unavailable");
+                    }
+                    return ClientCredentials.builder().clientId("client").clientSecret("secret").build();
+                })
+                .build();
+
+        // The default adapter reports the failure through the future
+        CompletableFuture<SACCredentials> failed = cachingProvider.getCredentialsAsync();
+        CompletionException exception = assertThrows(CompletionException.class, () -> failed.join());
+        assertTrue(exception.getCause() instanceof SACException);
+        assertEquals(1, cachingProvider.getStats().getRefreshFailures());
+
+        // The failure is not cached
+        fail.set(false);
+        assertEquals("client", ((ClientCredentials) cachingProvider.getCredentialsAsync().join()).getClientId());
+    }
 }
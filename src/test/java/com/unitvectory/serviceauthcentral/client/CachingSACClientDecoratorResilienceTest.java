@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Resilience test for the CachingSACClientDecorator class, measuring how it
+ * behaves under concurrent load while the upstream client is degraded.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class CachingSACClientDecoratorResilienceTest {
+
+    private static final int THREADS = 16;
+
+    private static final int AUDIENCES = 4;
+
+    private static final Duration TEST_DURATION = Duration.ofMillis(2500);
+
+    @Test
+    void degradedUpstreamTest() throws Exception {
+        // Short lived tokens so they are refreshed several times during the test
+        SACClient upstream = request -> TokenResponse.builder()
+                .accessToken(request.getAudience())
+                .tokenType("Bearer")
+                .expiresIn(2)
+                .build();
+
+        FaultInjector faults = FaultInjector.builder()
+                .latency(Duration.ofMillis(10))
+                .latencyJitter(Duration.ofMillis(40))
+                .failureRate(0.3)
+                .hangRate(0.05)
+                .hangDuration(Duration.ofMillis(300))
+                .seed(1234L)
+                .build();
+
+        // Track the calls in flight to the degraded upstream per audience
+        SACClient degraded = FaultInjectingSACClient.builder().client(upstream).faults(faults).build();
+        Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        SACClient tracked = request -> {
+            AtomicInteger count = inFlight.computeIfAbsent(request.getAudience(), k -> new AtomicInteger());
+            maxInFlight.accumulateAndGet(count.incrementAndGet(), Math::max);
+            try {
+                return degraded.getToken(request);
+            } finally {
+                count.decrementAndGet();
+            }
+        };
+
+        ExecutorService refreshExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        try {
+            CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                    .client(tracked)
+                    .refreshPolicy(TokenRefreshPolicy.builder()
+                            .refreshFraction(0.5)
+                            .minRemainingLifetime(Duration.ZERO)
+                            .jitter(0.0)
+                            .build())
+                    .refreshExecutor(refreshExecutor)
+                    .build();
+
+            List<TokenRequest> requests = new ArrayList<>();
+            for (int i = 0; i < AUDIENCES; i++) {
+                requests.add(TokenRequest.builder().audience("audience" + i).build());
+            }
+
+            // Fill the cache before applying load, retrying the injected failures
+            for (TokenRequest request : requests) {
+                fetchWithRetry(cachingClient, request);
+            }
+
+            AtomicLong calls = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+            long end = System.nanoTime() + TEST_DURATION.toNanos();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(callers.submit(() -> {
+                    int i = thread;
+                    while (System.nanoTime() < end) {
+                        TokenRequest request = requests.get(i++ % AUDIENCES);
+                        try {
+                            cachingClient.getToken(request);
+                        } catch (SACException e) {
+                            errors.incrementAndGet();
+                        }
+                        calls.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            CacheStats stats = cachingClient.getStats();
+
+            // Stale tokens are served while they are refreshed in the background
+            assertTrue(stats.getStaleHits() > 0, "stale hits " + stats.getStaleHits());
+            assertTrue(stats.getBackgroundRefreshes() > 0);
+
+            // The load on the degraded upstream does not grow with the callers, there
+            // is never more than one call in flight for a token
+            assertEquals(1, maxInFlight.get());
+
+            // Failures and hung calls stay hidden from nearly all callers; the bound
+            // is loose as the number of calls depends on the speed of the machine
+            assertTrue(errors.get() * 100 < calls.get(), "errors " + errors.get() + " for " + calls.get());
+        } finally {
+            callers.shutdownNow();
+            refreshExecutor.shutdownNow();
+            refreshExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void fetchWithRetry(SACClient client, TokenRequest request) {
+        for (int attempt = 0;; attempt++) {
+            try {
+                client.getToken(request);
+                return;
+            } catch (SACException e) {
+                if (attempt >= 20) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress test for the CachingSACClientDecorator class, checking its guarantees
+ * while many threads use it at the same time.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class CachingSACClientDecoratorStressTest {
+
+    private static final int THREADS = 32;
+
+    private static final int AUDIENCES = 4;
+
+    private static final Duration RUN_DURATION = Duration.ofMillis(1500);
+
+    private static final TokenRefreshPolicy SHORT_LIVED_POLICY = TokenRefreshPolicy.builder()
+            .refreshFraction(0.25)
+            .minRemainingLifetime(Duration.ofSeconds(1))
+            .jitter(0.0)
+            .build();
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        this.threads.shutdownNow();
+        assertTrue(this.threads.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void singleFetchPerKeyTest() throws Exception {
+        CountingClient upstream = new CountingClient(3600, Duration.ofMillis(10));
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder().client(upstream).build();
+
+        for (int round = 1; round <= 20; round++) {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            this.runAll(THREADS, thread -> {
+                barrier.await();
+                for (int i = 0; i < AUDIENCES; i++) {
+                    cachingClient.getToken(request((thread + i) % AUDIENCES));
+                }
+            });
+
+            for (int i = 0; i < AUDIENCES; i++) {
+                assertEquals(round, upstream.fetches(request(i)), "fetches for audience " + i);
+            }
+
+            cachingClient.clearCache();
+        }
+
+        assertEquals(1, upstream.maxConcurrent.get());
+    }
+
+    @Test
+    void singleFetchPerRefreshTest() throws Exception {
+        this.refreshUnderLoad(null);
+    }
+
+    @Test
+    void singleFetchPerBackgroundRefreshTest() throws Exception {
+        ExecutorService refreshExecutor = Executors.newFixedThreadPool(4);
+        try {
+            this.refreshUnderLoad(refreshExecutor);
+        } finally {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Use short lived tokens from many threads, checking each key is refreshed by
+     * one fetch at a time, about once per refresh interval, and no caller receives
+     * a token past its expiration. The minimum remaining lifetime leaves a wide
+     * margin so a caller descheduled before checking the token does not fail.
+     */
+    private void refreshUnderLoad(ExecutorService refreshExecutor) throws Exception {
+        CountingClient upstream = new CountingClient(2, Duration.ofMillis(20));
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(upstream)
+                .refreshPolicy(SHORT_LIVED_POLICY)
+                .refreshExecutor(refreshExecutor)
+                .build();
+
+        AtomicLong calls = new AtomicLong();
+        AtomicLong expired = new AtomicLong();
+        long end = System.nanoTime() + RUN_DURATION.toNanos();
+        this.runAll(THREADS, thread -> {
+            while (System.nanoTime() < end) {
+                TokenResponse response = cachingClient
+                        .getToken(request(ThreadLocalRandom.current().nextInt(AUDIENCES)));
+                if (!Instant.now().isBefore(response.getCreated().plusSeconds(response.getExpiresIn()))) {
+                    expired.incrementAndGet();
+                }
+                calls.incrementAndGet();
+                LockSupport.parkNanos(100_000);
+            }
+        });
+
+        assertEquals(0, expired.get(), "expired tokens returned");
+        assertEquals(1, upstream.maxConcurrent.get(), "concurrent fetches for a key");
+
+        // One fetch to fill the cache and one for each quarter lifetime
+        long maxFetches = 2 + RUN_DURATION.toMillis() / 500;
+        for (int i = 0; i < AUDIENCES; i++) {
+            long fetches = upstream.fetches(request(i));
+            assertTrue(fetches <= maxFetches, fetches + " fetches for audience " + i);
+        }
+        assertTrue(calls.get() > upstream.total.get() * 20);
+    }
+
+    @Test
+    void clearCacheDuringRefreshTest() throws Exception {
+        CountingClient upstream = new CountingClient(3600, Duration.ofMillis(5));
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder().client(upstream).build();
+
+        // The start and end of each clear, in order
+        List<long[]> clears = new ArrayList<>();
+
+        // The start of each call and the token it received
+        Queue<Map.Entry<Long, String>> observations = new ConcurrentLinkedQueue<>();
+
+        long end = System.nanoTime() + RUN_DURATION.toNanos();
+        Future<?> clearer = this.threads.submit(() -> {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                cachingClient.clearCache();
+                clears.add(new long[] { start, System.nanoTime() });
+                Thread.sleep(ThreadLocalRandom.current().nextInt(1, 4));
+            }
+            return null;
+        });
+
+        this.runAll(THREADS, thread -> {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                String token = cachingClient.getToken(request(thread % AUDIENCES)).getAccessToken();
+                observations.add(Map.entry(start, token));
+                LockSupport.parkNanos(100_000);
+            }
+        });
+        clearer.get();
+
+        // A call starting after a clear completed never receives a token whose
+        // fetch started before that clear began
+        long violations = 0;
+        for (Map.Entry<Long, String> observation : observations) {
+            long clearStart = lastClearStart(clears, observation.getKey());
+            if (upstream.fetchStart(observation.getValue()) < clearStart) {
+                violations++;
+            }
+        }
+
+        assertEquals(0, violations, "tokens fetched before a clear served after it");
+        assertTrue(clears.size() > 10);
+    }
+
+    @Test
+    void interruptionTest() throws Exception {
+        FaultInjector faults = FaultInjector.builder().latency(Duration.ofMillis(2)).build();
+        CountingClient upstream = new CountingClient(0, Duration.ZERO);
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(FaultInjectingSACClient.builder().client(upstream).faults(faults).build())
+                .refreshPolicy(TokenRefreshPolicy.builder().minRemainingLifetime(Duration.ZERO).build())
+                .build();
+
+        AtomicLong successes = new AtomicLong();
+        AtomicLong interrupted = new AtomicLong();
+        AtomicLong lostInterrupts = new AtomicLong();
+        List<Thread> workers = new CopyOnWriteArrayList<>();
+        long end = System.nanoTime() + RUN_DURATION.toNanos();
+
+        Future<?> chaos = this.threads.submit(() -> {
+            while (System.nanoTime() < end) {
+                if (!workers.isEmpty()) {
+                    workers.get(ThreadLocalRandom.current().nextInt(workers.size())).interrupt();
+                }
+                Thread.sleep(1);
+            }
+            return null;
+        });
+
+        // The tokens expire immediately so every call fetches while holding the lock
+        // and an interrupted fetch cannot fall back to the cached token
+        this.runAll(THREADS, thread -> {
+            workers.add(Thread.currentThread());
+            try {
+                while (System.nanoTime() < end) {
+                    try {
+                        cachingClient.getToken(request(thread % AUDIENCES));
+                        successes.incrementAndGet();
+                    } catch (SACException e) {
+                        if (!Thread.currentThread().isInterrupted()) {
+                            lostInterrupts.incrementAndGet();
+                        }
+                        interrupted.incrementAndGet();
+                    }
+                    Thread.interrupted();
+                }
+            } finally {
+                workers.remove(Thread.currentThread());
+                Thread.interrupted();
+            }
+        });
+        chaos.get();
+
+        assertTrue(interrupted.get() > 0);
+        assertTrue(successes.get() > 0);
+        assertEquals(0, lostInterrupts.get(), "interrupt flag cleared on failure");
+
+        // No lock was left held by an interrupted caller
+        this.runAll(AUDIENCES, thread -> cachingClient.getToken(request(thread)));
+    }
+
+    /**
+     * Find the start of the last clear that completed before the time.
+     */
+    private static long lastClearStart(List<long[]> clears, long time) {
+        int low = 0;
+        int high = clears.size() - 1;
+        long clearStart = Long.MIN_VALUE;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (clears.get(mid)[1] < time) {
+                clearStart = clears.get(mid)[0];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return clearStart;
+    }
+
+    private static TokenRequest request(int audience) {
+        return TokenRequest.builder().audience("audience" + audience).build();
+    }
+
+    /**
+     * Run the task on the given number of threads, failing if any of them fails
+     * or does not finish in time.
+     */
+    private void runAll(int count, StressTask task) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            int thread = t;
+            futures.add(this.threads.submit(() -> {
+                task.run(thread);
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StressTask {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * A client issuing numbered tokens, counting the fetches for each key and
+     * the most fetches in progress for the same key.
+     */
+    private static class CountingClient implements SACClient {
+
+        private final long expiresIn;
+
+        private final Duration latency;
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private final Map<TokenRequest, AtomicLong> fetches = new ConcurrentHashMap<>();
+
+        private final Map<TokenRequest, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+        private final Map<String, Long> fetchStarts = new ConcurrentHashMap<>();
+
+        CountingClient(long expiresIn, Duration latency) {
+            this.expiresIn = expiresIn;
+            this.latency = latency;
+        }
+
+        @Override
+        public TokenResponse getToken(TokenRequest request) {
+            long start = System.nanoTime();
+            AtomicInteger concurrent = this.inFlight.computeIfAbsent(request, k -> new AtomicInteger());
+            this.maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                if (!this.latency.isZero()) {
+                    Thread.sleep(this.latency.toMillis());
+                }
+
+                this.fetches.computeIfAbsent(request, k -> new AtomicLong()).incrementAndGet();
+                String token = request.getAudience() + ":" + this.total.incrementAndGet();
+                this.fetchStarts.put(token, start);
+                return TokenResponse.builder().accessToken(token).tokenType("Bearer").expiresIn(this.expiresIn)
+                        .build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SACException("Interrupted", e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        long fetches(TokenRequest request) {
+            AtomicLong count = this.fetches.get(request);
+            return count == null ? 0 : count.get();
+        }
+
+        long fetchStart(String token) {
+            return this.fetchStarts.get(token);
+        }
+    }
+}
@@ -14,6 +14,19 @@
 package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
@@ -64,4 +77,331 @@ class CachingSACClientDecoratorTest {
         // But the cached token will still be "2"
         assertEquals("2", cachingClient.getToken(tokenRequest).getAccessToken());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getTokenTimeoutTest() {
+        AtomicReference<Duration> budget = new AtomicReference<>();
+        SACClient sacClient = new SACClient() {
+
+            @Override
+            public TokenResponse getToken(TokenRequest tokenRequest) {
+                throw new AssertionError("Expected the deadline to be passed");
+            }
+
+            @Override
+            public TokenResponse getToken(TokenRequest tokenRequest, Duration timeout) {
+                budget.set(timeout);
+                return TokenResponse.builder()
+                        .accessToken("token")
+                        .tokenType("Bearer")
+                        .expiresIn(3600)
+                        .build();
+            }
+        };
+
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .build();
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+        // The remaining budget is passed to the client
+        assertEquals("token", cachingClient.getToken(tokenRequest, Duration.ofSeconds(5)).getAccessToken());
+        assertTrue(budget.get().compareTo(Duration.ZERO) > 0);
+        assertTrue(budget.get().compareTo(Duration.ofSeconds(5)) <= 0);
+
+        // A cached token is returned even when no time is left
+        budget.set(null);
+        assertEquals("token", cachingClient.getToken(tokenRequest, Duration.ZERO).getAccessToken());
+        assertNull(budget.get());
+
+        // Without a cached token the call times out
+        assertThrows(SACTimeoutException.class,
+                () -> cachingClient.getToken(TokenRequest.builder().audience("bar").build(), Duration.ZERO));
+    }
+
+    @Test
+    void getTokenLockTimeoutTest() throws Exception {
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(tokenRequest -> TokenResponse.builder()
+                        .accessToken("token")
+                        .tokenType("Bearer")
+                        .expiresIn(3600)
+                        .build())
+                .tokenStore(tokenStore)
+                .build();
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+        // Another caller holds the refresh lock
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (TokenStore.RefreshLock lock = tokenStore.lock(tokenRequest)) {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        // Waiting for the lock counts against the timeout
+        try {
+            assertThrows(SACTimeoutException.class,
+                    () -> cachingClient.getToken(tokenRequest, Duration.ofMillis(50)));
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        assertEquals("token", cachingClient.getToken(tokenRequest, Duration.ofSeconds(5)).getAccessToken());
+    }
+
+    @Test
+    void getStatsTest() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(tokenRequest -> {
+                    if (tokenRequest.getAudience().equals("fail")) {
+                        throw new SACException("unavailable");
+                    }
+                    calls.incrementAndGet();
+                    return TokenResponse.builder()
+                            .accessToken("token")
+                            .tokenType("Bearer")
+                            .expiresIn(3600)
+                            .build();
+                })
+                .build();
+        TokenRequest foo = TokenRequest.builder().audience("foo").build();
+        TokenRequest bar = TokenRequest.builder().audience("bar").scope("read").build();
+
+        assertNull(cachingClient.getRemainingLifetime(foo));
+
+        cachingClient.getToken(foo);
+        cachingClient.getToken(foo);
+        cachingClient.getToken(foo);
+        cachingClient.getToken(bar);
+        assertThrows(SACException.class, () -> cachingClient.getToken(TokenRequest.builder().audience("fail").build()));
+
+        CacheStats stats = cachingClient.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(0, stats.getStaleHits());
+        assertEquals(1, stats.getRefreshFailures());
+        assertEquals(2, stats.getEntries());
+        assertTrue(stats.getEstimatedSize() > 0);
+
+        Duration remaining = cachingClient.getRemainingLifetime(foo);
+        assertTrue(remaining.compareTo(Duration.ofSeconds(3500)) > 0);
+        assertTrue(remaining.compareTo(Duration.ofSeconds(3600)) <= 0);
+        assertEquals(Set.of(foo, bar), cachingClient.getRemainingLifetimes().keySet());
+
+        cachingClient.clearCache();
+        stats = cachingClient.getStats();
+        assertEquals(2, stats.getEvictions());
+        assertEquals(0, stats.getEntries());
+        assertTrue(cachingClient.getRemainingLifetimes().isEmpty());
+    }
+
+    @Test
+    void getTokenRefreshFailureTest() {
+        boolean[] fail = new boolean[1];
+        int[] count = new int[1];
+        SACClient sacClient = tokenRequest -> {
+            if (fail[0]) {
+                throw new SACException("Unavailable");
+            }
+            count[0]++;
+            return TokenResponse.builder()
+                    .accessToken(count[0] + "")
+                    .tokenType("Bearer")
+                    .expiresIn(3600)
+                    .created(Instant.now().minusSeconds(1200))
+                    .build();
+        };
+
+        // Tokens are due for refresh once 10 minutes old, every token is already 20
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .refreshPolicy(TokenRefreshPolicy.builder().refreshLeadTime(Duration.ofMinutes(50)).build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        assertEquals("1", cachingClient.getToken(tokenRequest).getAccessToken());
+
+        // Due for refresh, so the next call gets a new token
+        assertEquals("2", cachingClient.getToken(tokenRequest).getAccessToken());
+
+        // The refresh fails so the cached token is served
+        fail[0] = true;
+        assertEquals("2", cachingClient.getToken(tokenRequest).getAccessToken());
+    }
+
+    @Test
+    void getTokenBackgroundRefreshTest() {
+        int[] count = new int[1];
+        SACClient sacClient = tokenRequest -> {
+            count[0]++;
+            return TokenResponse.builder()
+                    .accessToken(count[0] + "")
+                    .tokenType("Bearer")
+                    .expiresIn(3600)
+                    .created(Instant.now().minusSeconds(2400))
+                    .build();
+        };
+
+        // Collect the background refreshes to run them when the test chooses
+        List<Runnable> tasks = new ArrayList<>();
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .refreshExecutor(tasks::add)
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        assertEquals("1", cachingClient.getToken(tokenRequest).getAccessToken());
+
+        // The token is past half of its life, it is served while refreshing
+        assertEquals("1", cachingClient.getToken(tokenRequest).getAccessToken());
+        assertEquals("1", cachingClient.getToken(tokenRequest).getAccessToken());
+
+        // Only one background refresh is scheduled
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals("2", cachingClient.getToken(tokenRequest).getAccessToken());
+
+        // The refreshed token is also past half of its life
+        CacheStats stats = cachingClient.getStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(3, stats.getStaleHits());
+        assertEquals(1, stats.getBackgroundRefreshes());
+    }
+
+    @Test
+    void getTokenNotUsableTest() {
+        AtomicInteger count = new AtomicInteger();
+        SACClient sacClient = tokenRequest -> TokenResponse.builder()
+                .accessToken(count.incrementAndGet() + "")
+                .tokenType("Bearer")
+                .expiresIn(20)
+                .build();
+
+        // Refreshed only at expiration, but the token has less than the minimum
+        // remaining lifetime from the start
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .refreshPolicy(TokenRefreshPolicy.builder()
+                        .refreshFraction(1)
+                        .minRemainingLifetime(Duration.ofSeconds(30))
+                        .jitter(0)
+                        .build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        assertEquals("1", cachingClient.getToken(tokenRequest).getAccessToken());
+        assertEquals("2", cachingClient.getToken(tokenRequest).getAccessToken());
+    }
+
+    @Test
+    void getRefreshTimeTest() {
+        SACClient sacClient = tokenRequest -> TokenResponse.builder()
+                .accessToken("token")
+                .tokenType("Bearer")
+                .expiresIn(3600)
+                .build();
+
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .refreshPolicy(TokenRefreshPolicy.builder().jitter(0.1).build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        assertNull(cachingClient.getRefreshTime(tokenRequest));
+
+        TokenResponse response = cachingClient.getToken(tokenRequest);
+
+        // Refreshed at half of the lifetime, moved earlier by up to 10% by the jitter
+        Instant refreshTime = cachingClient.getRefreshTime(tokenRequest);
+        assertFalse(refreshTime.isAfter(response.getCreated().plusSeconds(1800)));
+        assertFalse(refreshTime.isBefore(response.getCreated().plusSeconds(1440)));
+    }
+
+    @Test
+    void getRefreshTimeAdaptiveTest() {
+        SACClient sacClient = tokenRequest -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TokenResponse.builder()
+                    .accessToken("token")
+                    .tokenType("Bearer")
+                    .expiresIn(3600)
+                    .build();
+        };
+
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .refreshPolicy(TokenRefreshPolicy.builder()
+                        .latencyMultiple(100)
+                        .retryBudget(Duration.ofSeconds(60))
+                        .jitter(0)
+                        .build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        TokenResponse response = cachingClient.getToken(tokenRequest);
+
+        // Refreshed before the minimum remaining lifetime by the retry budget plus
+        // 100 times the fetch latency of at least 50ms, rather than at half of the
+        // lifetime
+        Instant expiration = response.getCreated().plusSeconds(3600);
+        Instant refreshTime = cachingClient.getRefreshTime(tokenRequest);
+        assertFalse(refreshTime.isAfter(expiration.minusSeconds(95)));
+        assertTrue(refreshTime.isAfter(expiration.minusSeconds(600)));
+    }
+
+    @Test
+    void warmUpTest() {
+        AtomicInteger count = new AtomicInteger();
+        boolean[] clientWarmedUp = new boolean[1];
+        SACClient sacClient = new SACClient() {
+
+            @Override
+            public TokenResponse getToken(TokenRequest tokenRequest) {
+                return TokenResponse.builder()
+                        .accessToken(tokenRequest.getAudience() + count.incrementAndGet())
+                        .tokenType("Bearer")
+                        .expiresIn(3600)
+                        .build();
+            }
+
+            @Override
+            public void warmUp() {
+                clientWarmedUp[0] = true;
+            }
+        };
+
+        TokenRequest foo = TokenRequest.builder().audience("foo").build();
+        TokenRequest bar = TokenRequest.builder().audience("bar").build();
+
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .prefetch(Set.of(foo, bar))
+                .prefetchParallelism(2)
+                .build();
+
+        assertFalse(cachingClient.isWarm());
+        cachingClient.warmUp();
+        assertTrue(cachingClient.isWarm());
+        assertTrue(clientWarmedUp[0]);
+        assertEquals(2, count.get());
+
+        // The prefetched tokens are served from the cache
+        cachingClient.getToken(foo);
+        cachingClient.getToken(bar);
+        assertEquals(2, count.get());
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for FailoverCredentialsProvider class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FailoverCredentialsProviderTest {
+
+    private static final SACCredentials PRIMARY = ClientCredentials.builder().clientId("primary")
+            .clientSecret("secret").build();
+
+    private static final SACCredentials SECONDARY = ClientCredentials.builder().clientId("secondary")
+            .clientSecret("secret").build();
+
+    private static CredentialsProvider withFaults(SACCredentials credentials, FaultInjector faults) {
+        return FaultInjectingCredentialsProvider.builder().provider(() -> credentials).faults(faults).build();
+    }
+
+    @Test
+    void emptyProvidersTest() {
+        assertThrows(SACException.class, () -> FailoverCredentialsProvider.builder().providers(List.of()).build());
+    }
+
+    @Test
+    void priorityOrderTest() {
+        FaultInjector secondaryFaults = FaultInjector.builder().build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(() -> PRIMARY, withFaults(SECONDARY, secondaryFaults)))
+                .build();
+
+        assertSame(PRIMARY, provider.getCredentials());
+        assertSame(PRIMARY, provider.getCredentials());
+        assertEquals(0, secondaryFaults.getCalls());
+    }
+
+    @Test
+    void failoverAndCooldownTest() {
+        FaultInjector primaryFaults = FaultInjector.builder().failOn(call -> call == 0).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), () -> SECONDARY))
+                .cooldown(Duration.ofHours(1))
+                .build();
+
+        // The primary fails and is then skipped for the cool-down
+        assertSame(SECONDARY, provider.getCredentials());
+        assertSame(SECONDARY, provider.getCredentials());
+        assertEquals(1, primaryFaults.getCalls());
+    }
+
+    @Test
+    void retryAfterCooldownTest() {
+        FaultInjector primaryFaults = FaultInjector.builder().failOn(call -> call == 0).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), () -> SECONDARY))
+                .cooldown(Duration.ZERO)
+                .build();
+
+        assertSame(SECONDARY, provider.getCredentials());
+        assertSame(PRIMARY, provider.getCredentials());
+        assertEquals(2, primaryFaults.getCalls());
+    }
+
+    @Test
+    void lastResortTest() {
+        FaultInjector primaryFaults = FaultInjector.builder().failOn(call -> call == 0).build();
+        FaultInjector secondaryFaults = FaultInjector.builder().failOn(call -> call > 0).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), withFaults(SECONDARY, secondaryFaults)))
+                .cooldown(Duration.ofHours(1))
+                .build();
+
+        assertSame(SECONDARY, provider.getCredentials());
+
+        // The secondary now fails, so the skipped primary is tried anyway
+        assertSame(PRIMARY, provider.getCredentials());
+    }
+
+    @Test
+    void allFailTest() {
+        SACException secondaryFailure = new SACException("secondary failed");
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(() -> {
+                    throw new SACException("primary failed");
+                }, () -> {
+                    throw secondaryFailure;
+                }))
+                .build();
+
+        assertSame(secondaryFailure, assertThrows(SACException.class, () -> provider.getCredentials()));
+
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> provider.getCredentialsAsync().join());
+        assertInstanceOf(SACException.class, exception.getCause());
+    }
+
+    @Test
+    void slowThresholdTest() {
+        FaultInjector primaryFaults = FaultInjector.builder().latency(Duration.ofMillis(50)).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), () -> SECONDARY))
+                .cooldown(Duration.ofHours(1))
+                .slowThreshold(Duration.ofMillis(10))
+                .build();
+
+        // The slow primary still returns its credentials but the secondary goes
+        // first until the cool-down passes
+        assertSame(PRIMARY, provider.getCredentials());
+        assertSame(SECONDARY, provider.getCredentials());
+        assertEquals(1, primaryFaults.getCalls());
+    }
+
+    @Test
+    void attemptTimeoutTest() {
+        CompletableFuture<SACCredentials> hung = new CompletableFuture<>();
+        CredentialsProvider primary = new CredentialsProvider() {
+            @Override
+            public SACCredentials getCredentials() {
+                return hung.join();
+            }
+
+            @Override
+            public CompletableFuture<SACCredentials> getCredentialsAsync() {
+                return hung;
+            }
+        };
+
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(primary, () -> SECONDARY))
+                .attemptTimeout(Duration.ofMillis(20))
+                .cooldown(Duration.ZERO)
+                .build();
+
+        assertSame(SECONDARY, provider.getCredentials());
+        assertSame(SECONDARY, provider.getCredentialsAsync().join());
+
+        // The hung future of the provider is not completed by the timeout
+        assertTrue(!hung.isDone());
+    }
+
+    @Test
+    void attemptTimeoutSyncProviderTest() {
+        // The provider only implements getCredentials, so it blocks the thread
+        // calling it
+        FaultInjector primaryFaults = FaultInjector.builder().latency(Duration.ofSeconds(2)).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), () -> SECONDARY))
+                .attemptTimeout(Duration.ofMillis(50))
+                .cooldown(Duration.ZERO)
+                .build();
+
+        long start = System.nanoTime();
+        assertSame(SECONDARY, provider.getCredentials());
+        assertSame(SECONDARY, provider.getCredentialsAsync().join());
+
+        // The caller did not wait for the slow provider to return
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertTrue(primaryFaults.getCalls() > 0);
+    }
+
+    @Test
+    void attemptTimeoutOnlyProviderTest() {
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(new CredentialsProvider() {
+                    @Override
+                    public SACCredentials getCredentials() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+                        return new CompletableFuture<>();
+                    }
+                }))
+                .attemptTimeout(Duration.ofMillis(10))
+                .build();
+
+        assertThrows(SACTimeoutException.class, () -> provider.getCredentials());
+    }
+
+    @Test
+    void attemptTimeoutWrapperTest() {
+        // The wrapper implements getCredentialsAsync by delegating to a provider
+        // that blocks the calling thread
+        FaultInjector primaryFaults = FaultInjector.builder().latency(Duration.ofSeconds(2)).build();
+        CredentialsProvider delegate = withFaults(PRIMARY, primaryFaults);
+        CredentialsProvider wrapper = new CredentialsProvider() {
+            @Override
+            public SACCredentials getCredentials() {
+                return delegate.getCredentials();
+            }
+
+            @Override
+            public CompletableFuture<SACCredentials> getCredentialsAsync() {
+                return delegate.getCredentialsAsync();
+            }
+        };
+
+        try (FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(wrapper, () -> SECONDARY))
+                .attemptTimeout(Duration.ofMillis(50))
+                .cooldown(Duration.ZERO)
+                .build()) {
+            long start = System.nanoTime();
+            assertSame(SECONDARY, provider.getCredentials());
+            assertSame(SECONDARY, provider.getCredentialsAsync().join());
+
+            // The caller did not wait for the slow provider to return
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        }
+    }
+
+    @Test
+    void closeTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                    .providers(List.of(() -> PRIMARY))
+                    .attemptTimeout(Duration.ofSeconds(1))
+                    .attemptExecutor(executor)
+                    .build();
+            assertSame(PRIMARY, provider.getCredentials());
+
+            // A provided executor is left running
+            provider.close();
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void asyncFailoverTest() {
+        FaultInjector primaryFaults = FaultInjector.builder().failOn(call -> call == 0).build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(withFaults(PRIMARY, primaryFaults), () -> SECONDARY))
+                .cooldown(Duration.ofHours(1))
+                .build();
+
+        assertSame(SECONDARY, provider.getCredentialsAsync().join());
+        assertSame(SECONDARY, provider.getCredentialsAsync().join());
+        assertEquals(1, primaryFaults.getCalls());
+    }
+
+    @Test
+    void warmUpTest() {
+        FaultInjector secondaryFaults = FaultInjector.builder().build();
+        CredentialsProvider failingWarmUp = new CredentialsProvider() {
+            @Override
+            public SACCredentials getCredentials() {
+                return PRIMARY;
+            }
+
+            @Override
+            public void warmUp() {
+                throw new SACException("warm up failed");
+            }
+        };
+
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(failingWarmUp, withFaults(SECONDARY, secondaryFaults)))
+                .cooldown(Duration.ofHours(1))
+                .build();
+
+        // The provider that failed to warm up is skipped
+        provider.warmUp();
+        assertSame(SECONDARY, provider.getCredentials());
+
+        FailoverCredentialsProvider allFailing = FailoverCredentialsProvider.builder()
+                .providers(List.of(failingWarmUp))
+                .build();
+        assertThrows(SACException.class, () -> allFailing.warmUp());
+    }
+
+    @Test
+    void interruptedTest() {
+        FaultInjector secondaryFaults = FaultInjector.builder().build();
+        FailoverCredentialsProvider provider = FailoverCredentialsProvider.builder()
+                .providers(List.of(new CredentialsProvider() {
+                    @Override
+                    public SACCredentials getCredentials() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public CompletableFuture<SACCredentials> getCredentialsAsync() {
+                        return new CompletableFuture<>();
+                    }
+                }, withFaults(SECONDARY, secondaryFaults)))
+                .attemptTimeout(Duration.ofSeconds(10))
+                .build();
+
+        // Interrupting the caller stops the attempts rather than failing over
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(SACException.class, () -> provider.getCredentials());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, secondaryFaults.getCalls());
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The FaultInjectingCredentialsProvider class decorates a CredentialsProvider
+ * injecting faults before each call.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FaultInjectingCredentialsProvider implements CredentialsProvider {
+
+    private final CredentialsProvider provider;
+
+    private final FaultInjector faults;
+
+    @Builder
+    private FaultInjectingCredentialsProvider(@NonNull CredentialsProvider provider,
+            @NonNull FaultInjector faults) {
+        this.provider = provider;
+        this.faults = faults;
+    }
+
+    @Override
+    public SACCredentials getCredentials() {
+        this.faults.inject();
+        return this.provider.getCredentials();
+    }
+}
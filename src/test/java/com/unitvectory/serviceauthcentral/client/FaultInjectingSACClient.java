@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * The FaultInjectingSACClient class decorates a SACClient injecting faults
+ * before each call.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FaultInjectingSACClient implements SACClient {
+
+    private final SACClient client;
+
+    private final FaultInjector faults;
+
+    @Builder
+    private FaultInjectingSACClient(@NonNull SACClient client, @NonNull FaultInjector faults) {
+        this.client = client;
+        this.faults = faults;
+    }
+
+    @Override
+    public TokenResponse getToken(TokenRequest request) {
+        this.faults.inject();
+        return this.client.getToken(request);
+    }
+
+    @Override
+    public TokenResponse getToken(TokenRequest request, Duration timeout) {
+        this.faults.inject();
+        return this.client.getToken(request, timeout);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+import lombok.Builder;
+
+/**
+ * The FaultInjector class injects latency, failures, error statuses and hung
+ * calls into the decorated calls for resilience testing.
+ * 
+ * Faults are injected by probability, or on a schedule by the index of the
+ * call starting from zero. A seed makes the sequence of faults repeatable. Each
+ * thread draws from its own generator so threads do not contend on it, seeded
+ * from the seed in the order the threads make their first call; the sequence
+ * of a single thread is the same as with one shared generator.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FaultInjector {
+
+    private final Duration latency;
+
+    private final Duration latencyJitter;
+
+    private final double failureRate;
+
+    private final Supplier<RuntimeException> failure;
+
+    private final double errorStatusRate;
+
+    private final int errorStatus;
+
+    private final double hangRate;
+
+    private final Duration hangDuration;
+
+    private final LongPredicate failOn;
+
+    /**
+     * The random generator of each thread.
+     */
+    private final ThreadLocal<Random> random;
+
+    /**
+     * The number of threads that have made a call, used to seed their
+     * generators.
+     */
+    private final AtomicLong threads = new AtomicLong();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong hangs = new AtomicLong();
+
+    /**
+     * Create a new fault injector.
+     * 
+     * @param latency         the latency added to every call; defaults to none
+     * @param latencyJitter   the maximum random latency added on top, uniformly
+     *                        distributed; defaults to none
+     * @param failureRate     the probability a call throws the failure
+     * @param failure         the exception thrown for failures; defaults to a
+     *                        SACException
+     * @param errorStatusRate the probability a call throws a SACClientException
+     *                        with the error status
+     * @param errorStatus     the status of the injected SACClientException;
+     *                        defaults to 503
+     * @param hangRate        the probability a call hangs
+     * @param hangDuration    how long a hung call blocks; defaults to 1 minute
+     * @param failOn          the schedule of calls that throw the failure, by
+     *                        call index
+     * @param seed            the random seed; defaults to a random seed
+     */
+    @Builder
+    private FaultInjector(Duration latency, Duration latencyJitter, double failureRate,
+            Supplier<RuntimeException> failure, double errorStatusRate, Integer errorStatus, double hangRate,
+            Duration hangDuration, LongPredicate failOn, Long seed) {
+        this.latency = latency == null ? Duration.ZERO : latency;
+        this.latencyJitter = latencyJitter == null ? Duration.ZERO : latencyJitter;
+        this.failureRate = failureRate;
+        this.failure = failure == null ? () -> new SACException("Injected failure") : failure;
+        this.errorStatusRate = errorStatusRate;
+        this.errorStatus = errorStatus == null ? 503 : errorStatus;
+        this.hangRate = hangRate;
+        this.hangDuration = hangDuration == null ? Duration.ofMinutes(1) : hangDuration;
+        this.failOn = failOn == null ? call -> false : failOn;
+        this.random = ThreadLocal.withInitial(() -> {
+            if (seed == null) {
+                return new Random();
+            }
+
+            // Spread the seeds so the threads get unrelated sequences
+            return new Random(seed + this.threads.getAndIncrement() * 0x9E3779B97F4A7C15L);
+        });
+    }
+
+    /**
+     * Inject the faults for a call, returning normally if the call should
+     * proceed.
+     */
+    void inject() {
+        long call = this.calls.getAndIncrement();
+        Random random = this.random.get();
+
+        long delay = this.latency.toNanos();
+        if (!this.latencyJitter.isZero()) {
+            delay += (long) (random.nextDouble() * this.latencyJitter.toNanos());
+        }
+        sleep(delay);
+
+        if (random.nextDouble() < this.hangRate) {
+            this.hangs.incrementAndGet();
+            sleep(this.hangDuration.toNanos());
+        }
+
+        if (this.failOn.test(call) || random.nextDouble() < this.failureRate) {
+            this.failures.incrementAndGet();
+            throw this.failure.get();
+        }
+
+        if (random.nextDouble() < this.errorStatusRate) {
+            this.failures.incrementAndGet();
+            throw new SACClientException("injected_error", List.of("Injected error"), this.errorStatus);
+        }
+    }
+
+    /**
+     * Get the number of calls.
+     * 
+     * @return the number of calls
+     */
+    long getCalls() {
+        return this.calls.get();
+    }
+
+    /**
+     * Get the number of calls that failed, including error statuses.
+     * 
+     * @return the number of failed calls
+     */
+    long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Get the number of calls that hung.
+     * 
+     * @return the number of hung calls
+     */
+    long getHangs() {
+        return this.hangs.get();
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SACException("Interrupted during injected latency", e);
+        }
+    }
+}
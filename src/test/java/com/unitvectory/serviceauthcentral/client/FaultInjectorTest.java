@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for FaultInjector class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FaultInjectorTest {
+
+    private static final TokenRequest REQUEST = TokenRequest.builder().audience("foo").build();
+
+    private static final SACClient CLIENT = request -> TokenResponse.builder()
+            .accessToken("token")
+            .tokenType("Bearer")
+            .expiresIn(3600)
+            .build();
+
+    @Test
+    void noFaultsTest() {
+        FaultInjector faults = FaultInjector.builder().build();
+        SACClient client = FaultInjectingSACClient.builder().client(CLIENT).faults(faults).build();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("token", client.getToken(REQUEST).getAccessToken());
+        }
+        assertEquals(100, faults.getCalls());
+        assertEquals(0, faults.getFailures());
+    }
+
+    @Test
+    void scheduleTest() {
+        FaultInjector faults = FaultInjector.builder().failOn(call -> call % 3 == 0).build();
+        SACClient client = FaultInjectingSACClient.builder().client(CLIENT).faults(faults).build();
+
+        assertThrows(SACException.class, () -> client.getToken(REQUEST));
+        client.getToken(REQUEST);
+        client.getToken(REQUEST);
+        assertThrows(SACException.class, () -> client.getToken(REQUEST));
+        assertEquals(2, faults.getFailures());
+    }
+
+    @Test
+    void errorStatusTest() {
+        FaultInjector faults = FaultInjector.builder().errorStatusRate(1.0).errorStatus(429).build();
+        SACClient client = FaultInjectingSACClient.builder().client(CLIENT).faults(faults).build();
+
+        SACClientException exception = assertThrows(SACClientException.class, () -> client.getToken(REQUEST));
+        assertEquals(429, exception.getStatus());
+    }
+
+    @Test
+    void probabilityTest() {
+        FaultInjector faults = FaultInjector.builder().failureRate(0.25).seed(42L).build();
+        CredentialsProvider provider = FaultInjectingCredentialsProvider.builder()
+                .provider(() -> ClientCredentials.builder().clientId("client").clientSecret("secret").build())
+                .faults(faults)
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            try {
+                provider.getCredentials();
+            } catch (SACException e) {
+                // Expected for the injected failures
+            }
+        }
+
+        assertTrue(faults.getFailures() > 150 && faults.getFailures() < 350);
+    }
+
+    @Test
+    void latencyAndHangTest() {
+        FaultInjector faults = FaultInjector.builder()
+                .latency(Duration.ofMillis(20))
+                .hangRate(1.0)
+                .hangDuration(Duration.ofMillis(50))
+                .build();
+        SACClient client = FaultInjectingSACClient.builder().client(CLIENT).faults(faults).build();
+
+        long start = System.nanoTime();
+        client.getToken(REQUEST);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(70).toNanos());
+        assertEquals(1, faults.getHangs());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for FileTokenStore class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class FileTokenStoreTest {
+
+    @Test
+    void putGetTest(@TempDir Path tempDir) {
+        FileTokenStore store = FileTokenStore.builder().directory(tempDir).namespace("client").build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").scope("read").build();
+        assertNull(store.get(tokenRequest));
+
+        TokenResponse tokenResponse = TokenResponse.builder()
+                .accessToken("token")
+                .tokenType("Bearer")
+                .expiresIn(3600)
+                .build();
+        store.put(tokenRequest, tokenResponse);
+
+        TokenResponse stored = store.get(tokenRequest);
+        assertNotNull(stored);
+        assertEquals("token", stored.getAccessToken());
+        assertEquals("Bearer", stored.getTokenType());
+        assertEquals(3600, stored.getExpiresIn());
+        assertEquals(tokenResponse.getCreated().toEpochMilli(), stored.getCreated().toEpochMilli());
+
+        // A different request is not found
+        assertNull(store.get(TokenRequest.builder().audience("foo").build()));
+    }
+
+    @Test
+    void sharedDirectoryTest(@TempDir Path tempDir) {
+        // Two stores on the same directory behave like two processes on the same host
+        FileTokenStore first = FileTokenStore.builder().directory(tempDir).namespace("client").build();
+        FileTokenStore second = FileTokenStore.builder().directory(tempDir).namespace("client").build();
+        FileTokenStore other = FileTokenStore.builder().directory(tempDir).namespace("other").build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        first.put(tokenRequest, TokenResponse.builder().accessToken("1").tokenType("Bearer").expiresIn(3600).build());
+        assertEquals("1", second.get(tokenRequest).getAccessToken());
+
+        // Replacing the token is seen by the other store
+        second.put(tokenRequest, TokenResponse.builder().accessToken("2").tokenType("Bearer").expiresIn(3600).build());
+        assertEquals("2", first.get(tokenRequest).getAccessToken());
+
+        // Different namespaces do not share tokens
+        assertNull(other.get(tokenRequest));
+
+        first.clear();
+        assertNull(second.get(tokenRequest));
+    }
+
+    @Test
+    void cachingDecoratorTest(@TempDir Path tempDir) {
+        int[] count = new int[1];
+        SACClient sacClient = tokenRequest -> {
+            count[0]++;
+            return TokenResponse.builder().accessToken(count[0] + "").tokenType("Bearer").expiresIn(3600).build();
+        };
+
+        CachingSACClientDecorator first = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .tokenStore(FileTokenStore.builder().directory(tempDir).namespace("client").build())
+                .build();
+        CachingSACClientDecorator second = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .tokenStore(FileTokenStore.builder().directory(tempDir).namespace("client").build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+        // The second decorator reuses the token requested by the first
+        assertEquals("1", first.getToken(tokenRequest).getAccessToken());
+        assertEquals("1", second.getToken(tokenRequest).getAccessToken());
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    void namespaceRequiredTest(@TempDir Path tempDir) {
+        assertThrows(NullPointerException.class, () -> FileTokenStore.builder().directory(tempDir).build());
+        assertThrows(SACException.class, () -> FileTokenStore.builder().directory(tempDir).namespace(" ").build());
+    }
+
+    @Test
+    void clearCacheSharedTest(@TempDir Path tempDir) {
+        int[] count = new int[1];
+        SACClient sacClient = tokenRequest -> {
+            count[0]++;
+            return TokenResponse.builder().accessToken(count[0] + "").tokenType("Bearer").expiresIn(3600).build();
+        };
+
+        CachingSACClientDecorator first = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .tokenStore(FileTokenStore.builder().directory(tempDir).namespace("client").build())
+                .build();
+        CachingSACClientDecorator second = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .tokenStore(FileTokenStore.builder().directory(tempDir).namespace("client").build())
+                .build();
+        CachingSACClientDecorator other = CachingSACClientDecorator.builder()
+                .client(sacClient)
+                .tokenStore(FileTokenStore.builder().directory(tempDir).namespace("other").build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+        assertEquals("1", first.getToken(tokenRequest).getAccessToken());
+        assertEquals("2", other.getToken(tokenRequest).getAccessToken());
+
+        // Clearing the cache removes the shared token for the same namespace only
+        first.clearCache();
+        assertEquals("3", second.getToken(tokenRequest).getAccessToken());
+        assertEquals("3", first.getToken(tokenRequest).getAccessToken());
+        assertEquals("2", other.getToken(tokenRequest).getAccessToken());
+    }
+
+    @Test
+    void lockTimeoutTest(@TempDir Path tempDir) throws Exception {
+        FileTokenStore store = FileTokenStore.builder().directory(tempDir).namespace("client").build();
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+        // Another thread holds the refresh lock
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (TokenStore.RefreshLock lock = store.lock(tokenRequest)) {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        try {
+            assertThrows(SACTimeoutException.class, () -> store.lock(tokenRequest, Duration.ofMillis(50)));
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        // The lock is available again once released
+        try (TokenStore.RefreshLock lock = store.lock(tokenRequest, Duration.ofSeconds(5))) {
+            assertNotNull(lock);
+        }
+    }
+}
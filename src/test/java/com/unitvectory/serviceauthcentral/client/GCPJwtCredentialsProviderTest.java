@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.auth.oauth2.IdToken;
+import com.google.auth.oauth2.IdTokenProvider;
+
+/**
+ * Test class for GCPJwtCredentialsProvider class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class GCPJwtCredentialsProviderTest {
+
+    @Test
+    void getCredentialsCachedTest() throws IOException {
+        IdTokenProvider idTokenProvider = mock(IdTokenProvider.class);
+        when(idTokenProvider.idTokenWithAudience(eq("testAudience"), any()))
+                .thenReturn(idToken("first", 3600), idToken("second", 3600));
+
+        GCPJwtCredentialsProvider provider = GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .idTokenProvider(idTokenProvider)
+                .build();
+
+        JwtAssertionCredentials credentials = (JwtAssertionCredentials) provider.getCredentials();
+        assertEquals("testClientId", credentials.getClientId());
+        assertEquals("first", JWT.decode(credentials.getJwtAssertion()).getSubject());
+
+        // The identity token is reused rather than fetched again
+        assertEquals(credentials, provider.getCredentials());
+        verify(idTokenProvider, times(1)).idTokenWithAudience(eq("testAudience"), any());
+    }
+
+    @Test
+    void getCredentialsBackgroundRefreshTest() throws IOException {
+        IdTokenProvider idTokenProvider = mock(IdTokenProvider.class);
+        when(idTokenProvider.idTokenWithAudience(eq("testAudience"), any()))
+                .thenReturn(idToken("first", 120), idToken("second", 3600));
+
+        // Run the background refresh on the calling thread to make the test
+        // deterministic
+        GCPJwtCredentialsProvider provider = GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .idTokenProvider(idTokenProvider)
+                .refreshExecutor(Runnable::run)
+                .build();
+
+        // The first token is near expiration, but still returned while refreshing
+        JwtAssertionCredentials first = (JwtAssertionCredentials) provider.getCredentials();
+        assertEquals("first", JWT.decode(first.getJwtAssertion()).getSubject());
+        JwtAssertionCredentials stillFirst = (JwtAssertionCredentials) provider.getCredentials();
+        assertEquals("first", JWT.decode(stillFirst.getJwtAssertion()).getSubject());
+
+        // The refreshed token is used afterwards
+        JwtAssertionCredentials second = (JwtAssertionCredentials) provider.getCredentials();
+        assertEquals("second", JWT.decode(second.getJwtAssertion()).getSubject());
+        verify(idTokenProvider, times(2)).idTokenWithAudience(eq("testAudience"), any());
+    }
+
+    @Test
+    void getCredentialsAsyncTest() throws IOException {
+        IdTokenProvider idTokenProvider = mock(IdTokenProvider.class);
+        when(idTokenProvider.idTokenWithAudience(eq("testAudience"), any()))
+                .thenReturn(idToken("first", 3600));
+
+        // Collect the refreshes to run them when the test chooses
+        List<Runnable> tasks = new ArrayList<>();
+        GCPJwtCredentialsProvider provider = GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .idTokenProvider(idTokenProvider)
+                .refreshExecutor(tasks::add)
+                .build();
+
+        // The caller is not blocked while the token is fetched and concurrent callers
+        // share the fetch
+        CompletableFuture<SACCredentials> first = provider.getCredentialsAsync();
+        CompletableFuture<SACCredentials> second = provider.getCredentialsAsync();
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals("first", JWT.decode(((JwtAssertionCredentials) first.join()).getJwtAssertion()).getSubject());
+        assertEquals(first.join(), second.join());
+
+        // The cached token is returned immediately
+        assertTrue(provider.getCredentialsAsync().isDone());
+        verify(idTokenProvider, times(1)).idTokenWithAudience(eq("testAudience"), any());
+    }
+
+    @Test
+    void getCredentialsExpiredTest() throws IOException {
+        IdTokenProvider idTokenProvider = mock(IdTokenProvider.class);
+        when(idTokenProvider.idTokenWithAudience(eq("testAudience"), any()))
+                .thenReturn(idToken("first", 30), idToken("second", 3600));
+
+        GCPJwtCredentialsProvider provider = GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .idTokenProvider(idTokenProvider)
+                .build();
+
+        // The first token is too close to expiration to use again, so the next call
+        // waits for a new token
+        provider.getCredentials();
+        JwtAssertionCredentials second = (JwtAssertionCredentials) provider.getCredentials();
+        assertEquals("second", JWT.decode(second.getJwtAssertion()).getSubject());
+    }
+
+    @Test
+    void lazyInitTest() {
+        GoogleCredentials googleCredentials = mock(GoogleCredentials.class);
+
+        // The credentials are only checked once used
+        GCPJwtCredentialsProvider provider = GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .googleCredentials(googleCredentials)
+                .lazyInit(true)
+                .build();
+
+        assertThrows(SACException.class, () -> provider.warmUp());
+        assertThrows(SACException.class, () -> provider.getCredentials());
+
+        assertThrows(SACException.class, () -> GCPJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .targetAudience("testAudience")
+                .googleCredentials(googleCredentials)
+                .build());
+    }
+
+    private static IdToken idToken(String subject, int expiresIn) throws IOException {
+        String jwt = JWT.create()
+                .withSubject(subject)
+                .withExpiresAt(Date.from(Instant.now().plusSeconds(expiresIn)))
+                .sign(Algorithm.HMAC256("secret"));
+        return IdToken.create(jwt);
+    }
+}
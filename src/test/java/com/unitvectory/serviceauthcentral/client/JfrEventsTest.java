@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Test class for the JFR events.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JfrEventsTest {
+
+    @Test
+    void availableTest() {
+        // The test runtime includes the jdk.jfr module
+        assertTrue(JfrEvents.AVAILABLE);
+    }
+
+    @Test
+    void cacheEventsTest(@TempDir Path tempDir) throws IOException {
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(tokenRequest -> TokenResponse.builder()
+                        .accessToken("token")
+                        .tokenType("Bearer")
+                        .expiresIn(3600)
+                        .build())
+                .build();
+        TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("serviceauthcentral.TokenCache");
+            recording.enable("serviceauthcentral.TokenRefresh");
+            recording.enable("serviceauthcentral.CacheLock");
+            recording.start();
+
+            cachingClient.getToken(tokenRequest);
+            cachingClient.getToken(tokenRequest);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        List<String> cacheResults = events.stream()
+                .filter(event -> event.getEventType().getName().equals("serviceauthcentral.TokenCache"))
+                .map(event -> event.getString("result"))
+                .collect(Collectors.toList());
+        assertEquals(List.of("miss", "hit"), cacheResults);
+
+        assertTrue(events.stream()
+                .anyMatch(event -> event.getEventType().getName().equals("serviceauthcentral.TokenRefresh")
+                        && event.getBoolean("success") && "foo".equals(event.getString("audience"))));
+        assertTrue(events.stream()
+                .anyMatch(event -> event.getEventType().getName().equals("serviceauthcentral.CacheLock")));
+    }
+
+    @Test
+    void disabledByDefaultTest(@TempDir Path tempDir) throws IOException {
+        CachingSACClientDecorator cachingClient = CachingSACClientDecorator.builder()
+                .client(tokenRequest -> TokenResponse.builder()
+                        .accessToken("token")
+                        .tokenType("Bearer")
+                        .expiresIn(3600)
+                        .build())
+                .build();
+
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            cachingClient.getToken(TokenRequest.builder().audience("foo").build());
+            recording.stop();
+            recording.dump(file);
+        }
+
+        assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(event -> event.getEventType().getName().startsWith("serviceauthcentral.")));
+    }
+}
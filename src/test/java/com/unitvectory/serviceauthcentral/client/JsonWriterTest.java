@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for JsonWriter class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JsonWriterTest {
+
+    @Test
+    void writeTest() {
+        String json = new JsonWriter()
+                .field("alg", "RS256")
+                .field("exp", 1700000000L)
+                .field("typ", "JWT")
+                .toString();
+
+        assertEquals("{\"alg\":\"RS256\",\"exp\":1700000000,\"typ\":\"JWT\"}", json);
+    }
+
+    @Test
+    void emptyTest() {
+        assertEquals("{}", new JsonWriter().toString());
+    }
+
+    @Test
+    void escapeTest() {
+        String value = "quote\" backslash\\ newline\n tab\t control\u0001 unicode\u00e9";
+        String json = new JsonWriter().field("key", value).field("nothing", null).toString();
+
+        assertEquals("{\"key\":\"quote\\\" backslash\\\\ newline\\n tab\\t control\\u0001 unicode\u00e9\","
+                + "\"nothing\":null}", json);
+
+        // Round trip through the reader
+        Map<String, Object> parsed = JsonReader.parseObject(json);
+        assertEquals(value, parsed.get("key"));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for JwksKeyCache class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class JwksKeyCacheTest {
+
+    private static RSAPublicKey firstKey;
+
+    private static RSAPublicKey secondKey;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        firstKey = (RSAPublicKey) generator.generateKeyPair().getPublic();
+        secondKey = (RSAPublicKey) generator.generateKeyPair().getPublic();
+    }
+
+    @Test
+    void parseTest() {
+        String json = "{\"keys\":[" + jwk("one", firstKey)
+                + ",{\"kty\":\"EC\",\"kid\":\"ec\",\"crv\":\"P-256\",\"x\":\"AA\",\"y\":\"AA\"}"
+                + ",{\"kty\":\"RSA\",\"kid\":\"enc\",\"use\":\"enc\",\"n\":\"AQAB\",\"e\":\"AQAB\"}"
+                + ",{\"kty\":\"RSA\",\"kid\":\"bad\",\"n\":\"!!\",\"e\":\"AQAB\"}"
+                + "],\"other\":[1,2,{\"a\":null}]}";
+
+        Map<String, PublicKey> keys = JwksKeyCache.parse(json);
+
+        // The invalid RSA key is skipped without failing the rest of the keys
+        assertEquals(1, keys.size());
+        assertEquals(firstKey, keys.get("one"));
+    }
+
+    @Test
+    void unknownKeyRefetchTest(@TempDir Path tempDir) throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        Path file = tempDir.resolve("jwks.json");
+        Files.writeString(file, "{\"keys\":[" + jwk("one", firstKey) + "]}");
+
+        JwksKeyCache cache = new JwksKeyCache(() -> {
+            fetches.incrementAndGet();
+            try {
+                return Files.readString(file);
+            } catch (Exception e) {
+                throw new SACException("read failed", e);
+            }
+        }, Long.MAX_VALUE, 0, Runnable::run);
+
+        assertEquals(firstKey, cache.getKey("one"));
+        assertEquals(firstKey, cache.getKey("one"));
+        assertEquals(1, fetches.get());
+
+        // A rotated key is picked up by refetching
+        Files.writeString(file, "{\"keys\":[" + jwk("one", firstKey) + "," + jwk("two", secondKey) + "]}");
+        assertEquals(secondKey, cache.getKey("two"));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void refetchRateLimitTest() {
+        AtomicInteger fetches = new AtomicInteger();
+        JwksKeyCache cache = new JwksKeyCache(() -> {
+            fetches.incrementAndGet();
+            return "{\"keys\":[" + jwk("one", firstKey) + "]}";
+        }, Long.MAX_VALUE, Long.MAX_VALUE, Runnable::run);
+
+        assertNotNull(cache.getKey("one"));
+
+        // Unknown key ids do not cause a fetch for each token
+        for (int i = 0; i < 10; i++) {
+            assertThrows(SACTokenVerificationException.class, () -> cache.getKey("unknown"));
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void refreshAheadTest() {
+        AtomicInteger fetches = new AtomicInteger();
+        JwksKeyCache cache = new JwksKeyCache(() -> {
+            if (fetches.incrementAndGet() > 1) {
+                throw new SACException("JWKS unavailable");
+            }
+            return "{\"keys\":[" + jwk("one", firstKey) + "]}";
+        }, 0, 0, Runnable::run);
+
+        // With no refresh interval the keys are refreshed ahead on every use, and a
+        // failed refresh keeps the current keys
+        assertEquals(firstKey, cache.getKey("one"));
+        assertEquals(2, fetches.get());
+        assertEquals(firstKey, cache.getKey("one"));
+        assertEquals(3, fetches.get());
+    }
+
+    @Test
+    void loadFailureTest() {
+        JwksKeyCache cache = new JwksKeyCache(() -> {
+            throw new SACException("JWKS unavailable");
+        }, Long.MAX_VALUE, Long.MAX_VALUE, Runnable::run);
+
+        SACKeySetUnavailableException exception = assertThrows(SACKeySetUnavailableException.class,
+                () -> cache.getKey("one"));
+        assertNotNull(exception.getCause());
+
+        // The next attempt is rate limited
+        exception = assertThrows(SACKeySetUnavailableException.class, () -> cache.getKey("one"));
+        assertNull(exception.getCause());
+    }
+
+    static String jwk(String kid, RSAPublicKey key) {
+        return new JsonWriter()
+                .field("kty", "RSA")
+                .field("kid", kid)
+                .field("use", "sig")
+                .field("alg", "RS256")
+                .field("n", base64(key.getModulus()))
+                .field("e", base64(key.getPublicExponent()))
+                .toString();
+    }
+
+    private static String base64(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for LatencyRecorder class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class LatencyRecorderTest {
+
+    @Test
+    void percentileTest() {
+        LatencyRecorder recorder = new LatencyRecorder(100);
+        assertEquals(-1, recorder.percentile(0.5));
+
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(i);
+        }
+
+        assertEquals(100, recorder.size());
+        assertEquals(50, recorder.percentile(0.5));
+        assertEquals(99, recorder.percentile(0.99));
+        assertEquals(100, recorder.percentile(1.0));
+    }
+
+    @Test
+    void ringBufferTest() {
+        LatencyRecorder recorder = new LatencyRecorder(10);
+        for (int i = 1; i <= 20; i++) {
+            recorder.record(i);
+        }
+
+        // Only the most recent latencies are kept
+        assertEquals(10, recorder.size());
+        assertEquals(11, recorder.percentile(0));
+        assertEquals(20, recorder.percentile(1.0));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for Lazy class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class LazyTest {
+
+    @Test
+    void deferredTest() {
+        AtomicInteger calls = new AtomicInteger();
+        Lazy<String> lazy = Lazy.of(() -> "value" + calls.incrementAndGet());
+
+        assertFalse(lazy.isInitialized());
+        assertEquals(0, calls.get());
+
+        assertEquals("value1", lazy.get());
+        assertEquals("value1", lazy.get());
+        assertTrue(lazy.isInitialized());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void eagerTest() {
+        AtomicInteger calls = new AtomicInteger();
+        Lazy<String> lazy = Lazy.of(() -> "value" + calls.incrementAndGet(), false);
+
+        assertTrue(lazy.isInitialized());
+        assertEquals(1, calls.get());
+        assertEquals("value1", lazy.get());
+
+        assertEquals("value", Lazy.value("value").get());
+    }
+
+    @Test
+    void failureRetriedTest() {
+        AtomicInteger calls = new AtomicInteger();
+        Lazy<String> lazy = Lazy.of(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new SACException("failed");
+            }
+            return "value";
+        });
+
+        assertThrows(SACException.class, () -> lazy.get());
+        assertFalse(lazy.isInitialized());
+        assertEquals("value", lazy.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void nullValueTest() {
+        Lazy<String> lazy = Lazy.of(() -> null);
+        assertThrows(SACException.class, () -> lazy.get());
+    }
+
+    @Test
+    void concurrentTest() throws Exception {
+        int threads = 16;
+        AtomicInteger calls = new AtomicInteger();
+        Lazy<Object> lazy = Lazy.of(() -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return lazy.get();
+                }));
+            }
+
+            Object value = futures.get(0).get();
+            for (Future<Object> future : futures) {
+                assertTrue(value == future.get());
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -14,19 +14,25 @@
 package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Base64;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -39,6 +45,7 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.gson.Gson;
 import com.unitvectory.serviceauthcentral.client.LocalJwtCredentialsProvider.LocalJwtCredentialsProviderBuilder;
 
 /**
@@ -52,6 +59,10 @@ class LocalJwtCredentialsProviderTest {
 
     private static RSAPublicKey publicKey;
 
+    private static String rotatedPrivateKeyPem;
+
+    private static RSAPublicKey rotatedPublicKey;
+
     // Before tests
     @BeforeAll
     static void setUp() throws NoSuchAlgorithmException {
@@ -69,6 +80,11 @@ class LocalJwtCredentialsProviderTest {
 
         // Get the public key
         publicKey = (RSAPublicKey) keyPair.getPublic();
+
+        // A second key to rotate to
+        KeyPair rotatedKeyPair = keyPairGenerator.generateKeyPair();
+        rotatedPrivateKeyPem = privateKeyToPem(rotatedKeyPair.getPrivate());
+        rotatedPublicKey = (RSAPublicKey) rotatedKeyPair.getPublic();
     }
 
     @Test
@@ -119,7 +135,7 @@ class LocalJwtCredentialsProviderTest {
         fileContent.put("private_key", privateKeyPem);
 
         // Encode map as JSON using GSON
-        String json = DefaultGson.getInstance().toJson(fileContent);
+        String json = new Gson().toJson(fileContent);
 
         // Write the JSON file
         File file = tempDir.resolve(UUID.randomUUID().toString() + ".json").toFile();
@@ -157,6 +173,221 @@ class LocalJwtCredentialsProviderTest {
 
     }
 
+    @Test
+    void missingKeyTest() {
+        assertThrows(SACException.class, () -> LocalJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .issuer("testIssuer")
+                .keyId("testKeyId")
+                .subject("testSubject")
+                .audience("testAudience")
+                .build());
+    }
+
+    @Test
+    void pemKeyFileTest(@TempDir Path tempDir) throws IOException {
+        Path keyFile = tempDir.resolve("key.pem");
+        Files.writeString(keyFile, privateKeyPem);
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, false, null)
+                .keyId("testKeyId")
+                .build()) {
+            assertKeyId(provider, "testKeyId", publicKey);
+
+            // The key id stays the configured one for a PEM file
+            Files.writeString(keyFile, rotatedPrivateKeyPem);
+            assertTrue(provider.reload());
+            assertKeyId(provider, "testKeyId", rotatedPublicKey);
+        }
+
+        // A PEM key file has no key id of its own
+        assertThrows(SACException.class, () -> keyFileProvider(keyFile, false, null).build());
+    }
+
+    @Test
+    void jsonKeyFileWithoutKeyIdTest(@TempDir Path tempDir) throws IOException {
+        Path keyFile = tempDir.resolve("key.json");
+        Map<String, String> fileContent = new HashMap<>();
+        fileContent.put("client_email", "example@example.com");
+        fileContent.put("private_key", privateKeyPem);
+        Files.writeString(keyFile, new Gson().toJson(fileContent));
+
+        // The configured key id is used when the file does not have one
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, false, null)
+                .keyId("testKeyId")
+                .build()) {
+            assertKeyId(provider, "testKeyId", publicKey);
+        }
+
+        assertThrows(SACException.class, () -> keyFileProvider(keyFile, false, null).build());
+    }
+
+    @Test
+    void reloadTest(@TempDir Path tempDir) throws IOException {
+        Path keyFile = tempDir.resolve("key.json");
+        writeServiceAccountFile(keyFile, "1", privateKeyPem);
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, false, null).build()) {
+            assertKeyId(provider, "1", publicKey);
+
+            // Nothing changed
+            assertFalse(provider.reload());
+
+            writeServiceAccountFile(keyFile, "2", rotatedPrivateKeyPem);
+            assertTrue(provider.reload());
+            assertEquals(List.of("2"), provider.getKeyIds());
+            assertKeyId(provider, "2", rotatedPublicKey);
+
+            // An invalid file is rejected and the current key continues to be used
+            Files.writeString(keyFile, "{\"private_key_id\": \"3\", \"private_key\": \"invalid\"}");
+            assertThrows(SACException.class, () -> provider.reload());
+            assertKeyId(provider, "2", rotatedPublicKey);
+        }
+    }
+
+    @Test
+    void keyActivationDelayTest(@TempDir Path tempDir) throws Exception {
+        Path keyFile = tempDir.resolve("key.json");
+        writeServiceAccountFile(keyFile, "1", privateKeyPem);
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, false, Duration.ofMillis(300))
+                .build()) {
+            writeServiceAccountFile(keyFile, "2", rotatedPrivateKeyPem);
+            assertTrue(provider.reload());
+
+            // Both keys are held while the new key waits to be activated
+            assertEquals(List.of("1", "2"), provider.getKeyIds());
+            assertKeyId(provider, "1", publicKey);
+
+            Thread.sleep(400);
+            assertEquals(List.of("2"), provider.getKeyIds());
+            assertKeyId(provider, "2", rotatedPublicKey);
+        }
+    }
+
+    @Test
+    void watchKeyFileTest(@TempDir Path tempDir) throws Exception {
+        Path keyFile = tempDir.resolve("key.json");
+        writeServiceAccountFile(keyFile, "1", privateKeyPem);
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, true, null).build()) {
+            assertKeyId(provider, "1", publicKey);
+
+            // Replace the file the way a mounted secret is updated
+            Path newFile = tempDir.resolve("key.json.tmp");
+            writeServiceAccountFile(newFile, "2", rotatedPrivateKeyPem);
+            Files.move(newFile, keyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long end = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (!provider.getKeyIds().equals(List.of("2")) && System.nanoTime() < end) {
+                Thread.sleep(10);
+            }
+
+            assertKeyId(provider, "2", rotatedPublicKey);
+        }
+    }
+
+    @Test
+    void watchKubernetesSecretTest(@TempDir Path tempDir) throws Exception {
+        // A mounted secret links the key file through the ..data link which is
+        // swapped to a new directory on update
+        Path first = Files.createDirectory(tempDir.resolve("..2024_01"));
+        writeServiceAccountFile(first.resolve("key.json"), "1", privateKeyPem);
+        Files.createSymbolicLink(tempDir.resolve("..data"), first.getFileName());
+        Path keyFile = Files.createSymbolicLink(tempDir.resolve("key.json"), Path.of("..data", "key.json"));
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, true, null).build()) {
+            assertKeyId(provider, "1", publicKey);
+
+            Path second = Files.createDirectory(tempDir.resolve("..2024_02"));
+            writeServiceAccountFile(second.resolve("key.json"), "2", rotatedPrivateKeyPem);
+            Path link = Files.createSymbolicLink(tempDir.resolve("..data_tmp"), second.getFileName());
+            Files.move(link, tempDir.resolve("..data"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            long end = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (!provider.getKeyIds().equals(List.of("2")) && System.nanoTime() < end) {
+                Thread.sleep(10);
+            }
+
+            assertKeyId(provider, "2", rotatedPublicKey);
+        }
+    }
+
+    @Test
+    void watchLazyInitTest(@TempDir Path tempDir) throws Exception {
+        Path keyFile = tempDir.resolve("key.json");
+        writeServiceAccountFile(keyFile, "1", privateKeyPem);
+
+        try (LocalJwtCredentialsProvider provider = keyFileProvider(keyFile, true, Duration.ofHours(1))
+                .lazyInit(true)
+                .build()) {
+            // Neither an unrelated file nor a change to the key file loads the keys
+            // before first use, which would hold the new key back for the activation
+            // delay
+            Files.writeString(tempDir.resolve("other.txt"), "other");
+            Thread.sleep(200);
+            writeServiceAccountFile(keyFile, "2", rotatedPrivateKeyPem);
+            Thread.sleep(200);
+
+            assertEquals(List.of("2"), provider.getKeyIds());
+            assertKeyId(provider, "2", rotatedPublicKey);
+        }
+    }
+
+    @Test
+    void lazyInitTest() {
+        // The key is not decoded until it is used
+        LocalJwtCredentialsProvider invalid = LocalJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .issuer("testIssuer")
+                .keyId("testKeyId")
+                .subject("testSubject")
+                .audience("testAudience")
+                .privateKeyPem("invalid")
+                .lazyInit(true)
+                .build();
+        assertThrows(SACException.class, () -> invalid.warmUp());
+        assertThrows(SACException.class, () -> invalid.getCredentials());
+
+        LocalJwtCredentialsProvider provider = LocalJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .issuer("testIssuer")
+                .keyId("testKeyId")
+                .subject("testSubject")
+                .audience("testAudience")
+                .privateKeyPem(privateKeyPem)
+                .lazyInit(true)
+                .build();
+        assertKeyId(provider, "testKeyId", publicKey);
+    }
+
+    private static LocalJwtCredentialsProviderBuilder keyFileProvider(Path keyFile, boolean watch,
+            Duration keyActivationDelay) {
+        return LocalJwtCredentialsProvider.builder()
+                .clientId("testClientId")
+                .issuer("testIssuer")
+                .subject("testSubject")
+                .audience("testAudience")
+                .keyFile(keyFile)
+                .watchKeyFile(watch)
+                .keyActivationDelay(keyActivationDelay);
+    }
+
+    private static void writeServiceAccountFile(Path file, String keyId, String pem) throws IOException {
+        Map<String, String> fileContent = new HashMap<>();
+        fileContent.put("client_email", "example@example.com");
+        fileContent.put("private_key_id", keyId);
+        fileContent.put("private_key", pem);
+        Files.writeString(file, new Gson().toJson(fileContent));
+    }
+
+    private static void assertKeyId(LocalJwtCredentialsProvider provider, String keyId, RSAPublicKey key) {
+        String assertion = ((JwtAssertionCredentials) provider.getCredentials()).getJwtAssertion();
+        DecodedJWT decodedJwt = JWT.require(Algorithm.RSA256(key, null)).build().verify(assertion);
+        assertEquals(keyId, decodedJwt.getKeyId());
+    }
+
     private static String privateKeyToPem(PrivateKey privateKey) {
         Base64.Encoder encoder = Base64.getMimeEncoder(64, new byte[] { '\n' });
         String encodedKey = encoder.encodeToString(privateKey.getEncoded());
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for RequestHedger class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class RequestHedgerTest {
+
+    private static final HttpRequest REQUEST = HttpRequest.newBuilder(URI.create("https://issuer.example.com/v1/token"))
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+
+    private static final HedgingPolicy POLICY = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(20))
+            .maxHedgeRatio(0.5)
+            .build();
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fastRequestTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        RequestHedger hedger = new RequestHedger(POLICY);
+        assertSame(response, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        // A fast request is not hedged
+        verify(httpClient, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void slowRequestTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> response = mock(HttpResponse.class);
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(slow, CompletableFuture.completedFuture(response));
+
+        RequestHedger hedger = new RequestHedger(POLICY);
+        assertSame(response, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        // The hedged request answered first and the slow request was cancelled
+        verify(httpClient, times(2)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        assertTrue(slow.isCancelled());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void hedgePermitTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> response = mock(HttpResponse.class);
+
+        // Every first request is slow, completing after the hedge delay
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenAnswer(invocation -> CompletableFuture.supplyAsync(() -> response,
+                        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)));
+
+        // The first request holds the only permit so the hedge is skipped
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .maxConcurrentRequests(1)
+                .build());
+        RequestHedger hedger = new RequestHedger(POLICY);
+        try (TokenRequestLimiter.Permit permit = limiter.acquire()) {
+            assertSame(response, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString(), limiter));
+        }
+        verify(httpClient, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        // With a permit to spare the request is hedged, still using the initial
+        // hedge as it was not used up, and the permit is released afterwards
+        limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .maxConcurrentRequests(2)
+                .build());
+        try (TokenRequestLimiter.Permit permit = limiter.acquire()) {
+            assertSame(response, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString(), limiter));
+            verify(httpClient, times(3)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+            TokenRequestLimiter.Permit released = limiter.tryAcquire();
+            assertNotNull(released);
+            released.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void hedgeBudgetTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> response = mock(HttpResponse.class);
+
+        // Every first request is slow, completing after the hedge delay
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenAnswer(invocation -> CompletableFuture.supplyAsync(() -> response,
+                        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)));
+
+        RequestHedger hedger = new RequestHedger(HedgingPolicy.builder()
+                .initialDelay(Duration.ofMillis(10))
+                .maxHedgeRatio(0.25)
+                .build());
+
+        for (int i = 0; i < 8; i++) {
+            hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString());
+        }
+
+        // The initial hedge plus one for every four requests
+        verify(httpClient, times(11)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void unavailableResponseTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> ok = mock(HttpResponse.class);
+        when(ok.statusCode()).thenReturn(200);
+        HttpResponse<String> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(503);
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(slow, CompletableFuture.completedFuture(unavailable));
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> slow.complete(ok));
+
+        // The hedged request answered first, but the endpoint was unavailable
+        RequestHedger hedger = new RequestHedger(POLICY);
+        assertSame(ok, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void bothUnavailableTest() throws IOException, InterruptedException {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<String> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(503);
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(slow, CompletableFuture.failedFuture(new IOException("second")));
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> slow.complete(unavailable));
+
+        // The response is used over the error so the caller sees the status
+        RequestHedger hedger = new RequestHedger(POLICY);
+        assertSame(unavailable, hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Test
+    void invalidPolicyTest() {
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().percentile(0).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().percentile(1.5).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().percentile(Double.NaN).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().maxHedgeRatio(-0.1).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().sampleSize(0).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().initialDelay(Duration.ofMillis(-1)).build());
+        assertThrows(SACException.class, () -> HedgingPolicy.builder().minDelay(Duration.ofMillis(-1)).build());
+        assertThrows(NullPointerException.class, () -> HedgingPolicy.builder().minDelay(null).build());
+
+        HedgingPolicy policy = HedgingPolicy.builder().build();
+        assertEquals(0.95, policy.getPercentile());
+        assertEquals(Duration.ofSeconds(1), policy.getInitialDelay());
+        assertEquals(Duration.ofMillis(10), policy.getMinDelay());
+        assertEquals(0.1, policy.getMaxHedgeRatio());
+        assertEquals(100, policy.getSampleSize());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void bothFailTest() {
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("first")));
+
+        RequestHedger hedger = new RequestHedger(POLICY);
+        IOException exception = assertThrows(IOException.class,
+                () -> hedger.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofString()));
+        assertEquals("first", exception.getMessage());
+    }
+}
@@ -14,20 +14,31 @@
 package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -84,7 +95,7 @@ class SACClientDefaultTest {
 
         // Validate the JSON body of the request
         assertEquals(
-                "audience=https%3A%2F%2F%2Faudience.example.com&grant_type=client_credentials&client_secret=testSecret&client_id=testClientId",
+                "audience=https%3A%2F%2F%2Faudience.example.com&grant_type=client_credentials&client_id=testClientId&client_secret=testSecret",
                 requestBody);
 
         // Validate the response
@@ -93,6 +104,277 @@ class SACClientDefaultTest {
         assertEquals(3600, response.getExpiresIn());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenRequestSettingsTest() throws IOException, InterruptedException {
+        SACClientDefault client = SACClientDefault.builder()
+                .httpClient(httpClient)
+                .issuer("https://issuer.example.com")
+                .credentialsProvider(StaticClientCredentialsProvider.builder()
+                        .clientId("testClientId")
+                        .clientSecret("testSecret")
+                        .build())
+                .userAgent("test-agent")
+                .requestTimeout(Duration.ofSeconds(3))
+                .httpVersion(HttpClient.Version.HTTP_1_1)
+                .expectContinue(true)
+                .build();
+
+        HttpResponse<String> httpResponse = mock(HttpResponse.class);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body())
+                .thenReturn("{\"access_token\":\"testAccessToken\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(httpResponse);
+
+        client.getToken(TokenRequest.builder().audience("first").build());
+        client.getToken(TokenRequest.builder().audience("second").build());
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient, times(2)).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+
+        // Each request is built from the template but has its own body
+        List<HttpRequest> requests = requestCaptor.getAllValues();
+        for (HttpRequest request : requests) {
+            assertEquals("https://issuer.example.com/v1/token", request.uri().toString());
+            assertEquals("POST", request.method());
+            assertEquals("application/x-www-form-urlencoded", request.headers().firstValue("Content-Type").get());
+            assertEquals("test-agent", request.headers().firstValue("User-Agent").get());
+            assertEquals(Duration.ofSeconds(3), request.timeout().get());
+            assertEquals(HttpClient.Version.HTTP_1_1, request.version().get());
+            assertTrue(request.expectContinue());
+        }
+
+        assertTrue(extractBody(requests.get(0).bodyPublisher().get()).startsWith("audience=first&"));
+        assertTrue(extractBody(requests.get(1).bodyPublisher().get()).startsWith("audience=second&"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenDeadlineTest() throws IOException, InterruptedException {
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(300);
+                    throw new HttpTimeoutException("request timed out");
+                });
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+
+        // The deadline has passed when the request times out
+        assertThrows(SACTimeoutException.class, () -> sacClient
+                .getToken(TokenRequest.builder().audience("aud").build(), Duration.ofMillis(200)));
+
+        // The request timeout is shortened to the remaining time
+        verify(httpClient).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        assertTrue(requestCaptor.getValue().timeout().get().compareTo(Duration.ofMillis(200)) <= 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenLimiterDeadlineTest() throws Exception {
+        SACClientDefault client = SACClientDefault.builder()
+                .httpClient(httpClient)
+                .issuer("https://issuer.example.com")
+                .credentialsProvider(StaticClientCredentialsProvider.builder()
+                        .clientId("testClientId")
+                        .clientSecret("testSecret")
+                        .build())
+                .limits(TokenRequestLimits.builder().maxConcurrentRequests(1).build())
+                .build();
+
+        CountDownLatch sending = new CountDownLatch(1);
+        HttpResponse<String> httpResponse = mock(HttpResponse.class);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body())
+                .thenReturn("{\"access_token\":\"testAccessToken\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenAnswer(invocation -> {
+                    HttpRequest request = invocation.getArgument(0);
+                    if (extractBody(request.bodyPublisher().get()).startsWith("audience=first&")) {
+                        // Hold the only permit
+                        sending.countDown();
+                        Thread.sleep(300);
+                        return httpResponse;
+                    }
+
+                    // Behave like the HTTP client and time out once the request timeout passes
+                    Thread.sleep(request.timeout().get().toMillis() + 10);
+                    throw new HttpTimeoutException("request timed out");
+                });
+
+        CompletableFuture<TokenResponse> first = CompletableFuture
+                .supplyAsync(() -> client.getToken(TokenRequest.builder().audience("first").build()));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // The time waiting for the permit counts against the deadline
+        long start = System.nanoTime();
+        assertThrows(SACTimeoutException.class, () -> client
+                .getToken(TokenRequest.builder().audience("second").build(), Duration.ofMillis(500)));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("testAccessToken", first.get(5, TimeUnit.SECONDS).getAccessToken());
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient, times(2)).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        HttpRequest second = requestCaptor.getAllValues().stream()
+                .filter(request -> !extractBody(request.bodyPublisher().get()).startsWith("audience=first&"))
+                .findFirst().get();
+        assertTrue(second.timeout().get().compareTo(Duration.ofMillis(250)) <= 0);
+        assertTrue(elapsed < 800, "took " + elapsed + "ms");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenDefaultTimeoutTest() throws IOException, InterruptedException {
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenThrow(new HttpTimeoutException("request timed out"));
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+
+        // Without a deadline a timed out request is a failure, not a timeout
+        SACException exception = assertThrows(SACException.class,
+                () -> sacClient.getToken(TokenRequest.builder().audience("aud").build()));
+        assertFalse(exception instanceof SACTimeoutException);
+
+        verify(httpClient).send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        assertEquals(Duration.ofSeconds(30), requestCaptor.getValue().timeout().get());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenInterruptedTest() throws IOException, InterruptedException {
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenThrow(new InterruptedException());
+
+        try {
+            assertThrows(SACException.class, () -> sacClient.getToken(TokenRequest.builder().audience("aud").build()));
+
+            // The interrupt flag is restored for the caller
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenErrorCachedTest() throws IOException, InterruptedException {
+
+        HttpResponse<String> httpResponse = mock(HttpResponse.class);
+        when(httpResponse.statusCode()).thenReturn(400);
+        when(httpResponse.body())
+                .thenReturn("{\"error\":\"invalid_request\",\"messages\":[\"Bad audience\"],\"status\":400}");
+
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(httpResponse);
+
+        SACClientDefault cachingErrorsClient = SACClientDefault.builder()
+                .httpClient(httpClient)
+                .issuer("https://issuer.example.com")
+                .credentialsProvider(StaticClientCredentialsProvider.builder()
+                        .clientId("testClientId")
+                        .clientSecret("testSecret")
+                        .build())
+                .errorCacheTtl(Duration.ofMinutes(1))
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("https://audience.example.com").build();
+
+        SACClientException first = assertThrows(SACClientException.class,
+                () -> cachingErrorsClient.getToken(tokenRequest));
+        assertEquals(400, first.getStatus());
+
+        // The error is rethrown from the cache without another request
+        SACClientException second = assertThrows(SACClientException.class,
+                () -> cachingErrorsClient.getToken(tokenRequest));
+        assertEquals(400, second.getStatus());
+        assertEquals("invalid_request", second.getError());
+
+        verify(httpClient, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getTokenFailoverTest() throws IOException, InterruptedException {
+
+        HttpResponse<String> httpResponse = mock(HttpResponse.class);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body())
+                .thenReturn("{\"access_token\":\"testAccessToken\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+
+        // The first region is down, the second is available
+        when(httpClient.send(argThat(request -> request != null && request.uri().getHost().equals("first.example.com")),
+                any(HttpResponse.BodyHandler.class))).thenThrow(new ConnectException("Connection refused"));
+        when(httpClient.send(argThat(request -> request != null && request.uri().getHost().equals("second.example.com")),
+                any(HttpResponse.BodyHandler.class))).thenReturn(httpResponse);
+
+        // The background probes of the endpoints never complete so they do not change
+        // the order
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(new CompletableFuture<>());
+
+        SACClientDefault multiRegionClient = SACClientDefault.builder()
+                .httpClient(httpClient)
+                .issuer("https://issuer.example.com")
+                .tokenEndpoints(List.of("https://first.example.com/v1/token", "https://second.example.com/v1/token"))
+                .credentialsProvider(StaticClientCredentialsProvider.builder()
+                        .clientId("testClientId")
+                        .clientSecret("testSecret")
+                        .build())
+                .build();
+
+        TokenRequest tokenRequest = TokenRequest.builder().audience("https://audience.example.com").build();
+        assertEquals("testAccessToken", multiRegionClient.getToken(tokenRequest).getAccessToken());
+
+        // The failed region is skipped on the next request
+        assertEquals("testAccessToken", multiRegionClient.getToken(tokenRequest).getAccessToken());
+        verify(httpClient, times(1)).send(
+                argThat(request -> request != null && request.uri().getHost().equals("first.example.com")),
+                any(HttpResponse.BodyHandler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void warmUpTest() {
+        HttpResponse<Void> httpResponse = mock(HttpResponse.class);
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+        assertFalse(sacClient.isWarm());
+        sacClient.warmUp();
+        assertTrue(sacClient.isWarm());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void warmUpUnreachableTest() {
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+
+        assertThrows(SACException.class, () -> sacClient.warmUp());
+        assertFalse(sacClient.isWarm());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void warmUpLazyInitTest() {
+        CredentialsProvider credentialsProvider = mock(CredentialsProvider.class);
+        when(credentialsProvider.getCredentials())
+                .thenReturn(ClientCredentials.builder().clientId("testClientId").clientSecret("testSecret").build());
+        HttpResponse<Void> httpResponse = mock(HttpResponse.class);
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+        SACClientDefault client = SACClientDefault.builder()
+                .httpClient(httpClient)
+                .issuer("https://issuer.example.com")
+                .credentialsProvider(credentialsProvider)
+                .lazyInit(true)
+                .build();
+
+        // Warming up the client completes the initialization the provider deferred
+        client.warmUp();
+        verify(credentialsProvider).warmUp();
+        assertTrue(client.isWarm());
+    }
+
     /**
      * Helper method to extract the body from the HttpRequest.BodyPublisher.
      * 
@@ -130,4 +412,4 @@ class SACClientDefaultTest {
             throw new RuntimeException("Failed to extract body", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -15,10 +15,9 @@ package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
-import org.junit.jupiter.api.Test;
+import java.util.Map;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
 
 /**
  * Test class for SACClientException class.
@@ -29,12 +28,8 @@ class SACClientExceptionTest {
 
     @Test
     void testSACClientException() {
-        JsonObject json = new JsonObject();
-        json.addProperty("error", "Test Error");
-        json.addProperty("status", 500);
-        JsonArray messages = new JsonArray();
-        messages.add("Test Message");
-        json.add("messages", messages);
+        Map<String, Object> json = JsonReader
+                .parseObject("{\"error\":\"Test Error\",\"status\":500,\"messages\":[\"Test Message\"]}");
 
         SACClientException exception = new SACClientException(json);
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for SACTokenBroker and BrokerSACClient classes.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class SACTokenBrokerTest {
+
+    @Test
+    void getTokenTest(@TempDir Path tempDir) {
+        int[] count = new int[1];
+        SACClient sacClient = tokenRequest -> {
+            count[0]++;
+            return TokenResponse.builder()
+                    .accessToken(tokenRequest.getAudience() + count[0])
+                    .tokenType("Bearer")
+                    .expiresIn(3600)
+                    .build();
+        };
+
+        Path socketPath = tempDir.resolve("broker.sock");
+        try (SACTokenBroker broker = SACTokenBroker.builder().client(sacClient).socketPath(socketPath).build()) {
+            broker.start();
+
+            BrokerSACClient brokerClient = BrokerSACClient.builder().socketPath(socketPath).build();
+            TokenRequest tokenRequest = TokenRequest.builder().audience("foo").scope("read").build();
+
+            TokenResponse response = brokerClient.getToken(tokenRequest);
+            assertEquals("foo1", response.getAccessToken());
+            assertEquals("Bearer", response.getTokenType());
+            assertEquals(3600, response.getExpiresIn());
+
+            // The broker caches the token
+            assertEquals("foo1", brokerClient.getToken(tokenRequest).getAccessToken());
+            assertEquals(1, count[0]);
+        }
+    }
+
+    @Test
+    void getTokenErrorTest(@TempDir Path tempDir) {
+        SACClient sacClient = tokenRequest -> {
+            throw new SACClientException("invalid_request", List.of("Bad audience"), 400);
+        };
+
+        Path socketPath = tempDir.resolve("broker.sock");
+        try (SACTokenBroker broker = SACTokenBroker.builder().client(sacClient).socketPath(socketPath).build()) {
+            broker.start();
+
+            BrokerSACClient brokerClient = BrokerSACClient.builder().socketPath(socketPath).build();
+            TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+            SACClientException exception = assertThrows(SACClientException.class,
+                    () -> brokerClient.getToken(tokenRequest));
+            assertEquals("invalid_request", exception.getError());
+            assertEquals(List.of("Bad audience"), exception.getMessages());
+            assertEquals(400, exception.getStatus());
+        }
+    }
+
+    @Test
+    void socketPermissionsTest(@TempDir Path tempDir) throws IOException {
+        Path socketPath = tempDir.resolve("broker.sock");
+        try (SACTokenBroker broker = SACTokenBroker.builder()
+                .client(tokenRequest -> TokenResponse.builder().accessToken("token").expiresIn(3600).build())
+                .socketPath(socketPath)
+                .build()) {
+            broker.start();
+
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socketPath)));
+
+            // The private directory the socket was bound in is removed
+            try (Stream<Path> files = Files.list(tempDir)) {
+                assertEquals(List.of(socketPath), files.toList());
+            }
+        }
+    }
+
+    @Test
+    void getTokenTimeoutTest(@TempDir Path tempDir) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        SACClient sacClient = tokenRequest -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new SACException("Released");
+        };
+
+        Path socketPath = tempDir.resolve("broker.sock");
+        try (SACTokenBroker broker = SACTokenBroker.builder().client(sacClient).socketPath(socketPath).build()) {
+            broker.start();
+
+            BrokerSACClient brokerClient = BrokerSACClient.builder()
+                    .socketPath(socketPath)
+                    .timeout(Duration.ofMillis(100))
+                    .build();
+            TokenRequest tokenRequest = TokenRequest.builder().audience("foo").build();
+
+            assertThrows(SACTimeoutException.class, () -> brokerClient.getToken(tokenRequest));
+        } finally {
+            release.countDown();
+        }
+
+        assertThrows(SACException.class,
+                () -> BrokerSACClient.builder().socketPath(socketPath).timeout(Duration.ZERO).build());
+    }
+
+    @Test
+    void invalidMessageTest() throws IOException {
+        // A negative or huge scope count is rejected before reading the scopes
+        assertThrows(IOException.class, () -> BrokerProtocol.readRequest(request(-1)));
+        assertThrows(IOException.class, () -> BrokerProtocol.readRequest(request(Integer.MAX_VALUE)));
+
+        // A string longer than the limit is rejected before allocating it
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BrokerProtocol.VERSION);
+        out.writeInt(BrokerProtocol.MAX_STRING_LENGTH + 1);
+        assertThrows(IOException.class, () -> BrokerProtocol.readRequest(input(bytes)));
+
+        bytes.reset();
+        out.writeByte(BrokerProtocol.VERSION);
+        out.writeInt(-2);
+        assertThrows(IOException.class, () -> BrokerProtocol.readRequest(input(bytes)));
+
+        // A valid request is still read
+        bytes.reset();
+        BrokerProtocol.writeRequest(out, TokenRequest.builder().audience("foo").scope("read").build());
+        assertEquals(TokenRequest.builder().audience("foo").scope("read").build(),
+                BrokerProtocol.readRequest(input(bytes)));
+    }
+
+    private static DataInputStream request(int scopeCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BrokerProtocol.VERSION);
+        out.writeInt(3);
+        out.write("foo".getBytes());
+        out.writeInt(scopeCount);
+        return input(bytes);
+    }
+
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
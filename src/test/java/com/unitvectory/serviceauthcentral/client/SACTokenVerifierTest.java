@@ -0,0 +1,278 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for SACTokenVerifier class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class SACTokenVerifierTest {
+
+    private static final String ISSUER = "https://sac.example.com";
+
+    private static final String AUDIENCE = "https://api.example.com";
+
+    private static PrivateKey privateKey;
+
+    private static String jwks;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        privateKey = keyPair.getPrivate();
+        jwks = "{\"keys\":[" + JwksKeyCacheTest.jwk("key1", (RSAPublicKey) keyPair.getPublic()) + "]}";
+    }
+
+    @Test
+    void verifyTest(@TempDir Path tempDir) throws Exception {
+        SACTokenVerifier verifier = verifier(tempDir);
+        long now = Instant.now().getEpochSecond();
+
+        VerifiedToken token = verifier.verify(sign("key1", new JsonWriter()
+                .field("aud", AUDIENCE)
+                .field("exp", now + 300)
+                .field("iat", now)
+                .field("iss", ISSUER)
+                .field("scope", "read write")
+                .field("sub", "client1")
+                .toString()));
+
+        assertEquals("client1", token.getSubject());
+        assertEquals(ISSUER, token.getIssuer());
+        assertEquals(List.of(AUDIENCE), token.getAudiences());
+        assertEquals(Set.of("read", "write"), token.getScopes());
+        assertEquals(Instant.ofEpochSecond(now), token.getIssuedAt());
+        assertEquals(Instant.ofEpochSecond(now + 300), token.getExpiration());
+        assertEquals("key1", token.getKeyId());
+    }
+
+    @Test
+    void verifiedCacheTest(@TempDir Path tempDir) throws Exception {
+        long now = Instant.now().getEpochSecond();
+        String token = sign("key1", claims(AUDIENCE, ISSUER, now + 300));
+
+        // A repeated token is served from the cache
+        SACTokenVerifier verifier = verifier(tempDir);
+        assertSame(verifier.verify(token), verifier.verify(token));
+
+        // Unless the cache is disabled
+        SACTokenVerifier uncached = SACTokenVerifier.builder()
+                .issuer(ISSUER)
+                .audience(AUDIENCE)
+                .jwksFile(tempDir.resolve("jwks.json"))
+                .verifiedCacheSize(0)
+                .build();
+        assertNotSame(uncached.verify(token), uncached.verify(token));
+
+        // Failed verifications are not cached
+        String expired = sign("key1", claims(AUDIENCE, ISSUER, now - 60));
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(expired));
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(expired));
+    }
+
+    @Test
+    void audienceArrayTest(@TempDir Path tempDir) throws Exception {
+        SACTokenVerifier verifier = verifier(tempDir);
+        long now = Instant.now().getEpochSecond();
+
+        String payload = "{\"aud\":[\"other\",\"" + AUDIENCE + "\"],\"exp\":" + (now + 300)
+                + ",\"iss\":\"" + ISSUER + "\",\"sub\":\"client1\",\"extra\":{\"nested\":[1,2]}}";
+
+        assertEquals(List.of("other", AUDIENCE), verifier.verify(sign("key1", payload)).getAudiences());
+    }
+
+    @Test
+    void invalidClaimsTest(@TempDir Path tempDir) throws Exception {
+        SACTokenVerifier verifier = verifier(tempDir);
+        long now = Instant.now().getEpochSecond();
+
+        // Expired
+        assertThrows(SACTokenVerificationException.class,
+                () -> verifier.verify(sign("key1", claims(AUDIENCE, ISSUER, now - 60))));
+
+        // Wrong audience
+        assertThrows(SACTokenVerificationException.class,
+                () -> verifier.verify(sign("key1", claims("https://other.example.com", ISSUER, now + 300))));
+
+        // Wrong issuer
+        assertThrows(SACTokenVerificationException.class,
+                () -> verifier.verify(sign("key1", claims(AUDIENCE, "https://evil.example.com", now + 300))));
+
+        // Not yet valid
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(sign("key1", new JsonWriter()
+                .field("aud", AUDIENCE)
+                .field("exp", now + 600)
+                .field("iss", ISSUER)
+                .field("nbf", now + 300)
+                .toString())));
+
+        // Missing expiration
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(sign("key1", new JsonWriter()
+                .field("aud", AUDIENCE)
+                .field("iss", ISSUER)
+                .toString())));
+    }
+
+    @Test
+    void invalidSignatureTest(@TempDir Path tempDir) throws Exception {
+        SACTokenVerifier verifier = verifier(tempDir);
+        long now = Instant.now().getEpochSecond();
+
+        String token = sign("key1", claims(AUDIENCE, ISSUER, now + 300));
+
+        // Swap the payload keeping the original signature
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + base64(claims(AUDIENCE, ISSUER, now + 3000)) + "." + parts[2];
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(forged));
+
+        // Unknown key
+        assertThrows(SACTokenVerificationException.class,
+                () -> verifier.verify(sign("key2", claims(AUDIENCE, ISSUER, now + 300))));
+
+        // The none algorithm is rejected
+        String none = base64("{\"alg\":\"none\",\"kid\":\"key1\"}") + "." + parts[1] + ".";
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify(none));
+
+        // Malformed tokens
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify("not a token"));
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify("a.b.c.d"));
+        assertThrows(SACTokenVerificationException.class, () -> verifier.verify("!!.??.**"));
+    }
+
+    @Test
+    void jwksServerTest() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/.well-known/jwks.json", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        try {
+            String issuer = "http://127.0.0.1:" + server.getAddress().getPort();
+            SACTokenVerifier verifier = SACTokenVerifier.builder()
+                    .issuer(issuer)
+                    .audience(AUDIENCE)
+                    .build();
+            long now = Instant.now().getEpochSecond();
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals("client1",
+                        verifier.verify(sign("key1", claims(AUDIENCE, issuer, now + 300))).getSubject());
+            }
+
+            // The keys are fetched once and cached
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void jwksUnavailableTest() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/.well-known/jwks.json", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+
+        try {
+            String issuer = "http://127.0.0.1:" + server.getAddress().getPort();
+            SACTokenVerifier verifier = SACTokenVerifier.builder()
+                    .issuer(issuer)
+                    .audience(AUDIENCE)
+                    .build();
+            long now = Instant.now().getEpochSecond();
+
+            // The keys being unavailable is not reported as an invalid token
+            String token = sign("key1", claims(AUDIENCE, issuer, now + 300));
+            assertThrows(SACKeySetUnavailableException.class, () -> verifier.verify(token));
+
+            // Malformed tokens are still rejected without loading the keys
+            assertThrows(SACTokenVerificationException.class, () -> verifier.verify("a.b.c.d"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static SACTokenVerifier verifier(Path tempDir) throws IOException {
+        Path file = tempDir.resolve("jwks.json");
+        Files.writeString(file, jwks);
+        return SACTokenVerifier.builder()
+                .issuer(ISSUER)
+                .audience(AUDIENCE)
+                .jwksFile(file)
+                .build();
+    }
+
+    private static String claims(String audience, String issuer, long exp) {
+        return new JsonWriter()
+                .field("aud", audience)
+                .field("exp", exp)
+                .field("iss", issuer)
+                .field("sub", "client1")
+                .toString();
+    }
+
+    private static String sign(String kid, String payload) throws Exception {
+        String header = new JsonWriter().field("alg", "RS256").field("kid", kid).field("typ", "JWT").toString();
+        String input = base64(header) + "." + base64(payload);
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(input.getBytes(StandardCharsets.US_ASCII));
+        return input + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+    }
+
+    private static String base64(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
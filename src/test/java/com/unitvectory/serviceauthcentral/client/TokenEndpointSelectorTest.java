@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test class for TokenEndpointSelector class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenEndpointSelectorTest {
+
+    @Test
+    void selectByLatencyTest() {
+        TokenEndpoint first = endpoint("https://first.example.com/v1/token");
+        TokenEndpoint second = endpoint("https://second.example.com/v1/token");
+        first.recordSuccess(Duration.ofMillis(100).toNanos());
+        second.recordSuccess(Duration.ofMillis(20).toNanos());
+
+        TokenEndpointSelector selector = new TokenEndpointSelector(List.of(first, second), Duration.ofSeconds(30));
+
+        // The faster endpoint is tried first
+        assertEquals(List.of(second, first), selector.select(null));
+    }
+
+    @Test
+    void selectUnhealthyLastTest() {
+        TokenEndpoint first = endpoint("https://first.example.com/v1/token");
+        TokenEndpoint second = endpoint("https://second.example.com/v1/token");
+        first.recordSuccess(Duration.ofMillis(20).toNanos());
+        second.recordSuccess(Duration.ofMillis(100).toNanos());
+
+        TokenEndpointSelector selector = new TokenEndpointSelector(List.of(first, second), Duration.ofSeconds(30));
+        selector.recordFailure(first);
+
+        // The failed endpoint is only tried as a last resort
+        assertFalse(first.isHealthy());
+        assertEquals(List.of(second, first), selector.select(null));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void probeTest() {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<Void> response = mock(HttpResponse.class);
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        TokenEndpoint first = endpoint("https://first.example.com/v1/token");
+        TokenEndpoint second = endpoint("https://second.example.com/v1/token");
+        first.recordSuccess(Duration.ofMillis(20).toNanos());
+        second.recordSuccess(Duration.ofMillis(100).toNanos());
+
+        // Retry immediately so the failed endpoint is probed on the next selection
+        TokenEndpointSelector selector = new TokenEndpointSelector(List.of(first, second), Duration.ZERO);
+        selector.recordFailure(first);
+        selector.select(httpClient);
+
+        // The probe succeeded so the endpoint is healthy again
+        assertTrue(first.isHealthy());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void probeUnhealthyStatusTest() {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpResponse<Void> response = mock(HttpResponse.class);
+        ArgumentCaptor<HttpRequest> requests = ArgumentCaptor.forClass(HttpRequest.class);
+        when(httpClient.sendAsync(requests.capture(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        HttpRequest template = HttpRequest.newBuilder(URI.create("https://first.example.com/v1/token"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("User-Agent", "test-agent")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        TokenEndpoint first = new TokenEndpoint(template,
+                new TokenRequestLimiter(TokenRequestLimits.builder().build()), null);
+        TokenEndpoint second = endpoint("https://second.example.com/v1/token");
+        first.recordSuccess(Duration.ofMillis(20).toNanos());
+        second.recordSuccess(Duration.ofMillis(100).toNanos());
+
+        TokenEndpointSelector selector = new TokenEndpointSelector(List.of(first, second), Duration.ZERO);
+
+        // Server errors and rate limits do not make the endpoint healthy
+        for (int status : new int[] { 500, 503, 429 }) {
+            when(response.statusCode()).thenReturn(status);
+            selector.recordFailure(first);
+            selector.select(httpClient);
+            assertFalse(first.isHealthy());
+        }
+
+        // A client error shows the endpoint is up
+        when(response.statusCode()).thenReturn(405);
+        selector.select(httpClient);
+        assertTrue(first.isHealthy());
+
+        // The probe is sent with the client's user agent
+        HttpRequest probe = requests.getValue();
+        assertEquals("GET", probe.method());
+        assertEquals("test-agent", probe.headers().firstValue("User-Agent").orElse(null));
+        assertFalse(probe.headers().firstValue("Content-Type").isPresent());
+    }
+
+    @Test
+    void unmeasuredOrderTest() {
+        TokenEndpoint first = endpoint("https://first.example.com/v1/token");
+        TokenEndpoint second = endpoint("https://second.example.com/v1/token");
+
+        TokenEndpointSelector selector = new TokenEndpointSelector(List.of(first, second), Duration.ofSeconds(30));
+
+        // Without measurements the configured order is used
+        assertEquals(List.of(first, second), selector.select(null));
+    }
+
+    private static TokenEndpoint endpoint(String url) {
+        return new TokenEndpoint(URI.create(url), new TokenRequestLimiter(TokenRequestLimits.builder().build()), null);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for TokenErrorCache class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenErrorCacheTest {
+
+    private static final TokenRequest REQUEST = TokenRequest.builder().audience("foo").build();
+
+    @Test
+    void cachedErrorTest() {
+        TokenErrorCache errorCache = new TokenErrorCache(Duration.ofMinutes(1), Set.of(400, 403));
+        errorCache.put(REQUEST, new SACClientException("invalid_request", List.of("Bad audience"), 400));
+
+        SACClientException exception = assertThrows(SACClientException.class, () -> errorCache.check(REQUEST));
+        assertEquals("invalid_request", exception.getError());
+        assertEquals(400, exception.getStatus());
+
+        // The cached error has no stack trace
+        assertEquals(0, exception.getStackTrace().length);
+
+        // Other requests are not affected
+        assertDoesNotThrow(() -> errorCache.check(TokenRequest.builder().audience("bar").build()));
+    }
+
+    @Test
+    void retryableErrorTest() {
+        TokenErrorCache errorCache = new TokenErrorCache(Duration.ofMinutes(1), Set.of(400, 403));
+        errorCache.put(REQUEST, new SACClientException("server_error", List.of("Unavailable"), 503));
+
+        assertDoesNotThrow(() -> errorCache.check(REQUEST));
+    }
+
+    @Test
+    void expiredErrorTest() throws InterruptedException {
+        TokenErrorCache errorCache = new TokenErrorCache(Duration.ofMillis(10), Set.of(400));
+        errorCache.put(REQUEST, new SACClientException("invalid_request", List.of("Bad audience"), 400));
+
+        Thread.sleep(20);
+        assertDoesNotThrow(() -> errorCache.check(REQUEST));
+    }
+
+    @Test
+    void disabledTest() {
+        TokenErrorCache errorCache = new TokenErrorCache(Duration.ZERO, Set.of(400));
+        errorCache.put(REQUEST, new SACClientException("invalid_request", List.of("Bad audience"), 400));
+
+        assertDoesNotThrow(() -> errorCache.check(REQUEST));
+    }
+}
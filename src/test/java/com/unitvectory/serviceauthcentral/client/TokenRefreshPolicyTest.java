@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for TokenRefreshPolicy class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenRefreshPolicyTest {
+
+    private static final Instant CREATED = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final TokenResponse TOKEN = TokenResponse.builder()
+            .accessToken("token")
+            .tokenType("Bearer")
+            .expiresIn(3600)
+            .created(CREATED)
+            .build();
+
+    @Test
+    void defaultTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.DEFAULT;
+
+        // Refreshes at half of the lifetime
+        assertEquals(CREATED.plusSeconds(1800), policy.refreshTime(TOKEN));
+        assertFalse(policy.needsRefresh(TOKEN, CREATED.plusSeconds(1799)));
+        assertTrue(policy.needsRefresh(TOKEN, CREATED.plusSeconds(1800)));
+
+        // Served until 30 seconds before expiration
+        assertTrue(policy.canServeStale(TOKEN, CREATED.plusSeconds(3569)));
+        assertFalse(policy.canServeStale(TOKEN, CREATED.plusSeconds(3570)));
+    }
+
+    @Test
+    void refreshFractionTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder().refreshFraction(0.8).build();
+        assertEquals(CREATED.plusSeconds(2880), policy.refreshTime(TOKEN));
+    }
+
+    @Test
+    void refreshLeadTimeTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder()
+                .refreshFraction(0.1)
+                .refreshLeadTime(Duration.ofMinutes(5))
+                .build();
+
+        // The lead time overrides the fraction
+        assertEquals(CREATED.plusSeconds(3300), policy.refreshTime(TOKEN));
+    }
+
+    @Test
+    void adaptiveTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder()
+                .latencyMultiple(4)
+                .retryBudget(Duration.ofSeconds(10))
+                .jitter(0)
+                .build();
+        assertTrue(policy.isAdaptive());
+
+        // The fixed refresh time is used until a latency is observed
+        assertEquals(CREATED.plusSeconds(1800), policy.refreshTime(TOKEN, -1));
+
+        // Refreshed the minimum remaining lifetime, 4 times the p99 of 5 seconds
+        // and the retry budget before expiration
+        long p99 = Duration.ofSeconds(5).toNanos();
+        assertEquals(CREATED.plusSeconds(3600 - 30 - 20 - 10), policy.refreshTime(TOKEN, p99));
+        assertFalse(policy.needsRefresh(TOKEN, CREATED.plusSeconds(3539), p99));
+        assertTrue(policy.needsRefresh(TOKEN, CREATED.plusSeconds(3540), p99));
+
+        // A slow endpoint moves the refresh earlier than half of the lifetime
+        assertEquals(CREATED.plusSeconds(3600 - 30 - 2400 - 10),
+                policy.refreshTime(TOKEN, Duration.ofMinutes(10).toNanos()));
+
+        // A latency spike never moves the refresh before a quarter of the lifetime
+        assertEquals(CREATED.plusSeconds(900), policy.refreshTime(TOKEN, Duration.ofHours(1).toNanos()));
+        assertEquals(CREATED.plusSeconds(900), policy.refreshTime(TOKEN, Long.MAX_VALUE));
+        assertFalse(policy.needsRefresh(TOKEN, CREATED.plusSeconds(899), Duration.ofHours(1).toNanos()));
+
+        assertFalse(TokenRefreshPolicy.DEFAULT.isAdaptive());
+        assertEquals(policy.refreshTime(TOKEN), policy.refreshTime(TOKEN, -1));
+    }
+
+    @Test
+    void invalidPolicyTest() {
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().refreshFraction(0).build());
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().refreshFraction(1.5).build());
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().refreshFraction(Double.NaN).build());
+
+        // Refreshing after the token can no longer be used
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder()
+                .refreshLeadTime(Duration.ofSeconds(10))
+                .minRemainingLifetime(Duration.ofSeconds(30))
+                .build());
+
+        assertThrows(SACException.class,
+                () -> TokenRefreshPolicy.builder().minRemainingLifetime(Duration.ofSeconds(-1)).build());
+        assertThrows(SACException.class,
+                () -> TokenRefreshPolicy.builder().maxStaleness(Duration.ofSeconds(-1)).build());
+
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().jitter(-0.1).build());
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().jitter(0.6).build());
+
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().latencyMultiple(-1).build());
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().latencyMultiple(Double.NaN).build());
+        assertThrows(SACException.class, () -> TokenRefreshPolicy.builder().latencySampleSize(0).build());
+        assertThrows(SACException.class,
+                () -> TokenRefreshPolicy.builder().retryBudget(Duration.ofSeconds(-1)).build());
+
+        // The whole lifetime and a lead time of exactly the minimum are allowed
+        TokenRefreshPolicy.builder().refreshFraction(1).build();
+        TokenRefreshPolicy.builder().refreshLeadTime(Duration.ofSeconds(30)).build();
+    }
+
+    @Test
+    void maxStalenessTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder()
+                .maxStaleness(Duration.ofMinutes(10))
+                .minRemainingLifetime(Duration.ofMinutes(1))
+                .build();
+
+        assertTrue(policy.canServeStale(TOKEN, CREATED.plusSeconds(2399)));
+        assertFalse(policy.canServeStale(TOKEN, CREATED.plusSeconds(2400)));
+
+        assertTrue(policy.isUsable(TOKEN, CREATED.plusSeconds(3539)));
+        assertFalse(policy.isUsable(TOKEN, CREATED.plusSeconds(3540)));
+    }
+
+    @Test
+    void credentialsTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder().minRemainingLifetime(Duration.ofMinutes(5)).build();
+
+        assertTrue(policy.isUsable(JwtAssertionCredentials.builder()
+                .expiration(Instant.now().plusSeconds(600)).build()));
+        assertFalse(policy.isUsable(JwtAssertionCredentials.builder()
+                .expiration(Instant.now().plusSeconds(120)).build()));
+    }
+
+    @Test
+    void jitterTest() {
+        Set<Instant> refreshTimes = new HashSet<>();
+        for (long seed = 0; seed < 100; seed++) {
+            TokenRefreshPolicy policy = TokenRefreshPolicy.builder().jitter(0.2).jitterSeed(seed).build();
+            Instant refreshTime = policy.refreshTime(TOKEN);
+
+            // Jitter only moves the refresh earlier, by up to 20% of the lifetime
+            assertFalse(refreshTime.isAfter(CREATED.plusSeconds(1800)));
+            assertFalse(refreshTime.isBefore(CREATED.plusSeconds(1080)));
+
+            // Stable for the same token
+            assertEquals(refreshTime, policy.refreshTime(TOKEN));
+
+            refreshTimes.add(refreshTime);
+        }
+
+        // Instances with different seeds refresh at different times
+        assertTrue(refreshTimes.size() > 90);
+    }
+
+    @Test
+    void jitterBoundedByCreatedTest() {
+        TokenRefreshPolicy policy = TokenRefreshPolicy.builder()
+                .refreshFraction(0.05)
+                .jitter(0.5)
+                .jitterSeed(1)
+                .build();
+
+        // The refresh time is never before the token was received
+        assertFalse(policy.refreshTime(TOKEN).isBefore(CREATED));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for TokenRequestBody class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenRequestBodyTest {
+
+    @Test
+    void clientCredentialsTest() {
+        TokenRequestBody requestBody = new TokenRequestBody();
+        TokenRequest request = TokenRequest.builder().audience("https://example.com").scope("write").scope("read")
+                .build();
+        SACCredentials credentials = ClientCredentials.builder().clientId("client").clientSecret("s3cret&=").build();
+
+        String expected = "audience=https%3A%2F%2Fexample.com&scope=read+write"
+                + "&grant_type=client_credentials&client_id=client&client_secret=s3cret%26%3D";
+        assertEquals(expected, encode(requestBody, request, credentials));
+
+        // The cached fragments produce the same body
+        assertEquals(expected, encode(requestBody, request, credentials));
+    }
+
+    @Test
+    void jwtAssertionTest() {
+        TokenRequestBody requestBody = new TokenRequestBody();
+        TokenRequest request = TokenRequest.builder().audience("aud").build();
+
+        SACCredentials first = JwtAssertionCredentials.builder().clientId("client").jwtAssertion("a.b.c").build();
+        assertEquals("audience=aud&grant_type=urn%3Aietf%3Aparams%3Aoauth%3Agrant-type%3Ajwt-bearer"
+                + "&client_id=client&assertion=a.b.c", encode(requestBody, request, first));
+
+        // Only the assertion changes between requests
+        SACCredentials second = JwtAssertionCredentials.builder().clientId("client").jwtAssertion("d.e.f").build();
+        assertEquals("audience=aud&grant_type=urn%3Aietf%3Aparams%3Aoauth%3Agrant-type%3Ajwt-bearer"
+                + "&client_id=client&assertion=d.e.f", encode(requestBody, request, second));
+    }
+
+    @Test
+    void credentialsChangeTest() {
+        TokenRequestBody requestBody = new TokenRequestBody();
+        TokenRequest request = TokenRequest.builder().audience("aud").build();
+
+        encode(requestBody, request, ClientCredentials.builder().clientId("one").clientSecret("a").build());
+
+        assertEquals("audience=aud&grant_type=client_credentials&client_id=two&client_secret=b",
+                encode(requestBody, request, ClientCredentials.builder().clientId("two").clientSecret("b").build()));
+    }
+
+    private static String encode(TokenRequestBody requestBody, TokenRequest request, SACCredentials credentials) {
+        return new String(requestBody.encode(request, credentials), StandardCharsets.US_ASCII);
+    }
+}
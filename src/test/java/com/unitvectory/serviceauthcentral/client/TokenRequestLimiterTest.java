@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for TokenRequestLimiter class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class TokenRequestLimiterTest {
+
+    @Test
+    void unlimitedTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder().build());
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire().close();
+        }
+    }
+
+    @Test
+    void rateLimitWaitTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(20.0)
+                .burst(1)
+                .maxWait(Duration.ofSeconds(1))
+                .build());
+
+        long start = System.nanoTime();
+        limiter.acquire().close();
+        limiter.acquire().close();
+        limiter.acquire().close();
+
+        // The second and third requests each wait for 50 milliseconds
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(90).toNanos());
+    }
+
+    @Test
+    void rateLimitTimeoutTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(1.0)
+                .maxWait(Duration.ofMillis(50))
+                .build());
+
+        limiter.acquire().close();
+
+        // The next request is not allowed for a second which exceeds the maximum wait
+        assertThrows(SACException.class, () -> limiter.acquire());
+    }
+
+    @Test
+    void concurrencyLimitTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .maxConcurrentRequests(1)
+                .maxWait(Duration.ofMillis(50))
+                .build());
+
+        TokenRequestLimiter.Permit permit = limiter.acquire();
+
+        // The only permit is in use
+        assertThrows(SACException.class, () -> limiter.acquire());
+
+        // Once released the next request is allowed
+        permit.close();
+        limiter.acquire().close();
+    }
+
+    @Test
+    void tryAcquireTest() throws InterruptedException {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(1.0)
+                .burst(2)
+                .maxConcurrentRequests(1)
+                .build());
+
+        // Not allowed without waiting while the only permit is in use, and the rate
+        // token is returned
+        TokenRequestLimiter.Permit permit = limiter.tryAcquire();
+        assertNotNull(permit);
+        assertNull(limiter.tryAcquire());
+        permit.close();
+
+        // The second token is still available, then the bucket is empty
+        permit = limiter.tryAcquire();
+        assertNotNull(permit);
+        permit.close();
+        assertNull(limiter.tryAcquire());
+    }
+
+    @Test
+    void deadlineTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(1.0)
+                .maxWait(Duration.ofSeconds(10))
+                .build());
+        limiter.acquire().close();
+
+        // The request deadline is shorter than the maximum wait
+        long start = System.nanoTime();
+        assertThrows(SACTimeoutException.class, () -> limiter.acquire(Deadline.after(Duration.ofMillis(50))));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+    }
+
+    @Test
+    void refundOnConcurrencyTimeoutTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(1.0)
+                .burst(2)
+                .maxConcurrentRequests(1)
+                .maxWait(Duration.ofMillis(100))
+                .build());
+
+        TokenRequestLimiter.Permit permit = limiter.acquire();
+
+        // The request times out waiting for the permit after taking the last token
+        assertThrows(SACTimeoutException.class, () -> limiter.acquire());
+        permit.close();
+
+        // The token was returned so the next request is allowed without waiting
+        limiter.acquire().close();
+    }
+
+    @Test
+    void refundOnInterruptTest() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(TokenRequestLimits.builder()
+                .requestsPerSecond(1.0)
+                .burst(1)
+                .maxWait(Duration.ofMillis(1500))
+                .build());
+        limiter.acquire().close();
+
+        Thread.currentThread().interrupt();
+        assertThrows(SACException.class, () -> limiter.acquire());
+        assertTrue(Thread.interrupted());
+
+        // Without the token being returned the next request would wait two seconds
+        limiter.acquire().close();
+    }
+
+    @Test
+    void invalidLimitsTest() {
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().requestsPerSecond(0.0).build());
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().requestsPerSecond(-1.0).build());
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().requestsPerSecond(Double.NaN).build());
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().requestsPerSecond(1.0).burst(0).build());
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().maxConcurrentRequests(0).build());
+        assertThrows(SACException.class, () -> TokenRequestLimits.builder().maxWait(Duration.ofSeconds(-1)).build());
+
+        assertEquals(Duration.ofSeconds(10), TokenRequestLimits.builder().build().getMaxWait());
+    }
+}
@@ -14,8 +14,8 @@
 package com.unitvectory.serviceauthcentral.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -26,17 +26,20 @@ import org.junit.jupiter.api.Test;
 class UrlFormEncoderTest {
 
     @Test
-    void testEncodeFormParams() {
-        // Create a map of parameters
-        Map<String, String> params = new LinkedHashMap<>();
-        params.put("param1", "value1");
-        params.put("param2", "value2");
-        params.put("param3", "value3");
-
-        // Encode the parameters
-        String encodedParams = UrlFormEncoder.encodeFormParams(params);
+    void testEncodeMatchesUrlEncoder() {
+        String[] values = { "simple", "https://audience.example.com", "a b+c", "read write",
+                "unicode \u00e9\u4e2d\ud83d\ude00", "symbols ~!@#$%^&*()_-=.", "" };
+        for (String value : values) {
+            assertEquals(URLEncoder.encode(value, StandardCharsets.UTF_8),
+                    new String(UrlFormEncoder.encode(value), StandardCharsets.US_ASCII));
+        }
+    }
 
-        // Verify the encoded string
-        assertEquals("param1=value1&param2=value2&param3=value3", encodedParams);
+    @Test
+    void testJoin() {
+        byte[] joined = UrlFormEncoder.join(UrlFormEncoder.encodeParam("a", "1"), null,
+                UrlFormEncoder.encodeParam("b", "2 3"));
+        assertEquals("a=1&b=2+3", new String(joined, StandardCharsets.US_ASCII));
+        assertEquals("", new String(UrlFormEncoder.join(), StandardCharsets.US_ASCII));
     }
 }
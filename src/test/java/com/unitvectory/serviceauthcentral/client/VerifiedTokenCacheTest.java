@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.unitvectory.serviceauthcentral.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for VerifiedTokenCache class.
+ * 
+ * @author Jared Hatfield (UnitVectorY Labs)
+ */
+class VerifiedTokenCacheTest {
+
+    @Test
+    void keyTest() {
+        assertEquals(VerifiedTokenCache.key("a.b.c"), VerifiedTokenCache.key("a.b.c"));
+        assertNotEquals(VerifiedTokenCache.key("a.b.c"), VerifiedTokenCache.key("a.b.d"));
+    }
+
+    @Test
+    void getPutTest() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 0);
+        ByteBuffer key = VerifiedTokenCache.key("a.b.c");
+        VerifiedToken token = token(Instant.now().plusSeconds(300));
+
+        assertNull(cache.get(key));
+        cache.put(key, token);
+        assertSame(token, cache.get(key));
+    }
+
+    @Test
+    void expiredTest() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 0);
+        ByteBuffer key = VerifiedTokenCache.key("a.b.c");
+        cache.put(key, token(Instant.now().minusSeconds(1)));
+
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+
+        // Within the clock skew the token is still used
+        VerifiedTokenCache skewCache = new VerifiedTokenCache(10, 30);
+        VerifiedToken token = token(Instant.now().minusSeconds(1));
+        skewCache.put(key, token);
+        assertSame(token, skewCache.get(key));
+    }
+
+    @Test
+    void boundedTest() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, 0);
+        cache.put(VerifiedTokenCache.key("expired"), token(Instant.now().minusSeconds(1)));
+        cache.put(VerifiedTokenCache.key("one"), token(Instant.now().plusSeconds(300)));
+
+        // The oldest entry is evicted to make room
+        cache.put(VerifiedTokenCache.key("two"), token(Instant.now().plusSeconds(300)));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(VerifiedTokenCache.key("expired")));
+
+        // New tokens are always cached, even when every entry is still valid
+        cache.put(VerifiedTokenCache.key("three"), token(Instant.now().plusSeconds(300)));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(VerifiedTokenCache.key("one")));
+        assertNotNull(cache.get(VerifiedTokenCache.key("two")));
+        assertNotNull(cache.get(VerifiedTokenCache.key("three")));
+    }
+
+    private static VerifiedToken token(Instant expiration) {
+        return VerifiedToken.builder().subject("client").expiration(expiration).build();
+    }
+}